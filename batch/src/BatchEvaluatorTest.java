@@ -0,0 +1,119 @@
+import dendron.Dendron;
+import dendron.DendronException;
+import dendron.Errors;
+import dendron.ParseTree;
+import dendron.Result;
+import dendron.batch.BatchEvaluator;
+import dendron.batch.BatchResult;
+
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Check that evaluating a program over many rows of input at once with
+ * {@link BatchEvaluator#evaluate(ParseTree, Map, int)} gives, row by row, exactly
+ * what interpreting it once per row gives: the same printed values, the
+ * same final variables and the same error. Random programs read their
+ * input variables, some variables that are never assigned, and divide
+ * by small values, so every kind of failure comes up in some rows.
+ * <p>
+ * Run it with <code>--add-modules jdk.incubator.vector</code>, on a class
+ * path with both the core and the batch subproject.
+ *
+ * @author RIT CS
+ */
+public class BatchEvaluatorTest {
+
+    private static final long SEED = 15;
+
+    private static final int PROGRAMS = 200;
+
+    /**
+     * Not a multiple of any vector length, so that the
+     * leftover rows at the end are checked too
+     */
+    private static final int ROWS = 3_001;
+
+    /**
+     * Run the check.
+     * @param args not used
+     */
+    public static void main( String... args ) {
+        RandomPrograms random = new RandomPrograms( SEED );
+        Random values = random.random();
+        List< String > inputs = RandomPrograms.names( "v", 3 );
+        // u0 is never assigned, so the programs that read it fail.
+        List< String > unassigned = List.of( "v0", "v1", "v2", "u0" );
+        int failures = 0;
+        int failedRows = 0;
+        for ( int i = 0; i < PROGRAMS; ++i ) {
+            String source = random.program( 8, 3, inputs,
+                                            i % 4 == 0 ? unassigned : inputs );
+            Map< String, int[] > columns = new HashMap<>();
+            for ( String input: inputs ) {
+                int[] column = new int[ ROWS ];
+                for ( int row = 0; row < ROWS; ++row ) {
+                    column[ row ] = values.nextInt( 9 ) - 4;
+                }
+                columns.put( input, column );
+            }
+            BatchResult batch = BatchEvaluator.evaluate(
+                    Dendron.parse( new StringReader( source ) ),
+                    columns, ROWS );
+            failedRows += batch.failures();
+            for ( int row = 0; row < ROWS; ++row ) {
+                StringBuilder start = new StringBuilder();
+                for ( String input: inputs ) {
+                    start.append( ":= " ).append( input ).append( ' ' )
+                         .append( columns.get( input )[ row ] ).append( '\n' );
+                }
+                Result expected = Dendron.interpret( start + source );
+                if ( !matches( expected, batch, row ) ) {
+                    if ( failures++ < 3 ) {
+                        System.out.println( "Row " + row + " differs:\n" +
+                                            start + source + expected +
+                                            "\nbatch error " +
+                                            batch.error( row ) );
+                    }
+                }
+            }
+        }
+
+        System.out.println( PROGRAMS + " programs over " + ROWS +
+                            " rows each; " + failedRows + " rows failed." );
+        if ( failures > 0 ) {
+            System.out.println( "FAILED: " + failures + " rows differ." );
+            System.exit( 1 );
+        }
+        System.out.println( "PASSED" );
+    }
+
+    /**
+     * @return true if one row of the batch has the interpreter's results
+     */
+    private static boolean matches( Result expected, BatchResult batch,
+                                    int row ) {
+        Errors.Type error = expected.error().map( DendronException::getType )
+                                    .orElse( null );
+        if ( error != batch.error( row ) ) {
+            return false;
+        }
+        for ( Map.Entry< String, Integer > variable:
+                expected.symbols().entrySet() ) {
+            int[] column = batch.variables().get( variable.getKey() );
+            if ( column == null || column[ row ] != variable.getValue() ) {
+                return false;
+            }
+        }
+        int[] outputs = expected.outputs();
+        for ( int k = 0; k < outputs.length; ++k ) {
+            if ( batch.prints().get( k )[ row ] != outputs[ k ] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,355 @@
+package dendron.batch;
+
+import dendron.Errors;
+import dendron.ParseTree;
+import dendron.treenodes.*;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs one program over many rows of input at once. Each input variable
+ * is given as a column, an <code>int[]</code> with one value per row. The
+ * program is run a block of rows at a time, and within a block each
+ * operation is done on whole SIMD vectors of rows using the incubating
+ * Vector API (so the JVM needs <code>--add-modules
+ * jdk.incubator.vector</code>).
+ * <p>
+ * Every row gets exactly the result that running the program on that
+ * row alone would give. Errors are tracked for each row separately. The
+ * first error in a row stops that row: its variables are no longer
+ * assigned and it prints nothing more, while the other rows go on.
+ * Because a program has no branches, every row reads the same variables
+ * in the same order. So reading a variable that is neither an input nor
+ * assigned yet fails every row still running.
+ *
+ * @author RIT CS
+ */
+public final class BatchEvaluator {
+
+    private static final VectorSpecies<Integer> SPECIES =
+            IntVector.SPECIES_PREFERRED;
+
+    /**
+     * How many rows are worked on together. The temporary columns for
+     * a block stay in the processor's cache.
+     */
+    private static final int BLOCK = 1024;
+
+    private static final int DIVIDE_BY_ZERO =
+            Errors.Type.DIVIDE_BY_ZERO.ordinal() + 1;
+    private static final int UNINITIALIZED =
+            Errors.Type.UNINITIALIZED.ordinal() + 1;
+
+    // A compiled form of the program, with variables already
+    // bound to their columns.
+    private sealed interface Expr permits Const, Column, Missing, Unary,
+                                          Binary {}
+    private record Const(int value) implements Expr {}
+    private record Column(int[] values) implements Expr {}
+    private record Missing() implements Expr {}
+    private record Unary(boolean negate, Expr operand) implements Expr {}
+    private record Binary(char operator, Expr left, Expr right)
+            implements Expr {}
+
+    /**
+     * A compiled statement. An assignment has a target column,
+     * a print has an output column.
+     */
+    private record Statement(Expr expr, int[] target, int[] output,
+                             boolean canFail) {}
+
+    private final int rows;
+    private final Map<String, int[]> columns = new LinkedHashMap<>();
+    private final List<int[]> prints = new ArrayList<>();
+    private final List<Statement> statements = new ArrayList<>();
+    private final int[] errors;
+    private final int[] failedAt;
+    private int depth = 1;
+
+    // Scratch space for one block
+    private int[][] temps;
+    private final int[] blockErrors = new int[BLOCK];
+    private final int[] before = new int[BLOCK];
+
+    private BatchEvaluator(int rows) {
+        this.rows = rows;
+        this.errors = new int[rows];
+        this.failedAt = new int[rows];
+        Arrays.fill(this.failedAt, -1);
+    }
+
+    /**
+     * Run the program a parse tree represents over a batch of rows.
+     * @param tree the program to run
+     * @param inputs the starting value of each input variable, one column
+     *               per variable (the arrays are not changed)
+     * @param rows how many rows there are
+     * @return the final variables, the printed values and the errors,
+     *         all in columns
+     * @throws IllegalArgumentException if an input column does not have
+     *         one value per row
+     * @see #evaluate(Program, Map, int)
+     */
+    public static BatchResult evaluate(ParseTree tree,
+                                       Map<String, int[]> inputs, int rows) {
+        return evaluate(tree.program(), inputs, rows);
+    }
+
+    /**
+     * Run a program over a batch of rows.
+     * @param program the program to run
+     * @param inputs the starting value of each input variable, one column
+     *               per variable (the arrays are not changed)
+     * @param rows how many rows there are
+     * @return the final variables, the printed values and the errors,
+     *         all in columns
+     * @throws IllegalArgumentException if an input column does not have
+     *         one value per row
+     */
+    public static BatchResult evaluate(Program program,
+                                       Map<String, int[]> inputs, int rows) {
+        BatchEvaluator evaluator = new BatchEvaluator(rows);
+        for (Map.Entry<String, int[]> input : inputs.entrySet()) {
+            if (input.getValue().length != rows) {
+                throw new IllegalArgumentException("column " +
+                        input.getKey() + " has " + input.getValue().length +
+                        " values, not " + rows);
+            }
+            evaluator.columns.put(input.getKey(), input.getValue().clone());
+        }
+        for (ActionNode action : program.getActions()) {
+            evaluator.compile(action);
+        }
+        evaluator.run();
+        return new BatchResult(rows, evaluator.columns, evaluator.prints,
+                               evaluator.errors, evaluator.failedAt);
+    }
+
+    private void compile(ActionNode action) {
+        if (action instanceof Assignment assignment) {
+            Expr rhs = compile(assignment.getRhs(), 0);
+            int[] target = this.columns.computeIfAbsent(
+                    assignment.getIdent(), name -> new int[this.rows]);
+            this.statements.add(
+                    new Statement(rhs, target, null, canFail(rhs)));
+        }
+        else {
+            Expr printee = compile(((Print) action).getPrintee(), 0);
+            int[] output = new int[this.rows];
+            this.prints.add(output);
+            this.statements.add(
+                    new Statement(printee, null, output, canFail(printee)));
+        }
+    }
+
+    /**
+     * Compile an expression, noting how many temporary columns
+     * evaluating it will need.
+     */
+    private Expr compile(ExpressionNode expr, int level) {
+        this.depth = Math.max(this.depth, level + 1);
+        if (expr instanceof Constant constant) {
+            return new Const(constant.getValue());
+        }
+        else if (expr instanceof Variable variable) {
+            int[] values = this.columns.get(variable.getName());
+            return values == null ? new Missing() : new Column(values);
+        }
+        else if (expr instanceof UnaryOperation unary) {
+            return new Unary(unary.getOperator().equals("_"),
+                             compile(unary.getExpr(), level));
+        }
+        BinaryOperation binary = (BinaryOperation) expr;
+        char operator = binary.getOperator().charAt(0);
+        if (operator == '/') {
+            // The divisor is evaluated first, so it gets the lower level.
+            return new Binary(operator, compile(binary.getLeft(), level + 1),
+                              compile(binary.getRight(), level));
+        }
+        return new Binary(operator, compile(binary.getLeft(), level),
+                          compile(binary.getRight(), level + 1));
+    }
+
+    private static boolean canFail(Expr expr) {
+        if (expr instanceof Missing) {
+            return true;
+        }
+        else if (expr instanceof Unary unary) {
+            return canFail(unary.operand());
+        }
+        else if (expr instanceof Binary binary) {
+            if (binary.operator() == '/' &&
+                    !(binary.right() instanceof Const c && c.value() != 0)) {
+                return true;
+            }
+            return canFail(binary.left()) || canFail(binary.right());
+        }
+        return false;
+    }
+
+    private void run() {
+        this.temps = new int[this.depth][BLOCK];
+        int[] old = new int[BLOCK];
+        for (int start = 0; start < this.rows; start += BLOCK) {
+            int length = Math.min(BLOCK, this.rows - start);
+            // Work on whole vectors; the lanes past the end of the
+            // block are ignored.
+            int width = SPECIES.loopBound(length + SPECIES.length() - 1);
+            Arrays.fill(this.blockErrors, 0);
+            boolean anyFailed = false;
+
+            for (int s = 0; s < this.statements.size(); s++) {
+                Statement statement = this.statements.get(s);
+                if (statement.canFail()) {
+                    System.arraycopy(this.blockErrors, 0, this.before, 0,
+                                     width);
+                }
+                int[] value = this.temps[0];
+                evaluate(statement.expr(), 0, start, length, width);
+                if (statement.canFail()) {
+                    anyFailed |= noteFailures(s, start, length);
+                }
+
+                int[] column = statement.target() != null ?
+                        statement.target() : statement.output();
+                if (anyFailed) {
+                    // Rows that have failed keep what they had.
+                    System.arraycopy(column, start, old, 0, length);
+                    for (int i = 0; i < width; i += SPECIES.length()) {
+                        IntVector.fromArray(SPECIES, old, i).blend(
+                                IntVector.fromArray(SPECIES, value, i),
+                                alive(i)).intoArray(value, i);
+                    }
+                }
+                System.arraycopy(value, 0, column, start, length);
+            }
+            System.arraycopy(this.blockErrors, 0, this.errors, start, length);
+        }
+    }
+
+    /**
+     * Record which statement stopped the rows that failed in it.
+     * @return true if any row of the block has failed
+     */
+    private boolean noteFailures(int statement, int start, int length) {
+        boolean any = false;
+        for (int i = 0; i < length; i++) {
+            if (this.blockErrors[i] != 0) {
+                any = true;
+                if (this.before[i] == 0) {
+                    this.failedAt[start + i] = statement;
+                }
+            }
+        }
+        return any;
+    }
+
+    /**
+     * @return the lanes, from row i of the block, that have not failed
+     */
+    private VectorMask<Integer> alive(int i) {
+        return IntVector.fromArray(SPECIES, this.blockErrors, i)
+                        .compare(VectorOperators.EQ, 0);
+    }
+
+    /**
+     * Mark the error in every lane from row i of the block that is
+     * selected and has not already failed.
+     */
+    private void fail(int i, VectorMask<Integer> lanes, int code) {
+        IntVector errors = IntVector.fromArray(SPECIES, this.blockErrors, i);
+        errors.blend(code, lanes.and(errors.compare(VectorOperators.EQ, 0)))
+              .intoArray(this.blockErrors, i);
+    }
+
+    /**
+     * Evaluate an expression for a block of rows into temps[level].
+     * Subexpressions are evaluated in the same order as the tree
+     * interpreter's, so each row's first error is the one it would
+     * have reported.
+     */
+    private void evaluate(Expr expr, int level, int start, int length,
+                          int width) {
+        int[] result = this.temps[level];
+        if (expr instanceof Const constant) {
+            Arrays.fill(result, 0, width, constant.value());
+        }
+        else if (expr instanceof Column column) {
+            System.arraycopy(column.values(), start, result, 0, length);
+        }
+        else if (expr instanceof Missing) {
+            VectorMask<Integer> all = SPECIES.maskAll(true);
+            for (int i = 0; i < width; i += SPECIES.length()) {
+                fail(i, all, UNINITIALIZED);
+            }
+            Arrays.fill(result, 0, width, 0);
+        }
+        else if (expr instanceof Unary unary) {
+            evaluate(unary.operand(), level, start, length, width);
+            if (unary.negate()) {
+                for (int i = 0; i < width; i += SPECIES.length()) {
+                    IntVector.fromArray(SPECIES, result, i)
+                             .neg().intoArray(result, i);
+                }
+            }
+            else {
+                // There is no integer square root on vectors.
+                for (int i = 0; i < width; i++) {
+                    result[i] = (int) Math.sqrt(result[i]);
+                }
+            }
+        }
+        else {
+            Binary binary = (Binary) expr;
+            int[] left = result;
+            int[] right = this.temps[level + 1];
+            if (binary.operator() == '/') {
+                // The divisor is evaluated and checked first, so it goes
+                // in the lower level, where evaluating the dividend
+                // cannot overwrite it.
+                left = right;
+                right = result;
+                evaluate(binary.right(), level, start, length, width);
+                for (int i = 0; i < width; i += SPECIES.length()) {
+                    fail(i, IntVector.fromArray(SPECIES, right, i)
+                                     .compare(VectorOperators.EQ, 0),
+                         DIVIDE_BY_ZERO);
+                }
+                evaluate(binary.left(), level + 1, start, length, width);
+            }
+            else {
+                evaluate(binary.left(), level, start, length, width);
+                evaluate(binary.right(), level + 1, start, length, width);
+            }
+            VectorOperators.Binary operator = switch (binary.operator()) {
+                case '+' -> VectorOperators.ADD;
+                case '-' -> VectorOperators.SUB;
+                case '*' -> VectorOperators.MUL;
+                default -> VectorOperators.DIV;
+            };
+            for (int i = 0; i < width; i += SPECIES.length()) {
+                IntVector l = IntVector.fromArray(SPECIES, left, i);
+                IntVector r = IntVector.fromArray(SPECIES, right, i);
+                if (operator == VectorOperators.DIV) {
+                    // Leave the lanes with a zero divisor alone;
+                    // they have failed.
+                    l = l.lanewise(operator, r,
+                                   r.compare(VectorOperators.NE, 0));
+                }
+                else {
+                    l = l.lanewise(operator, r);
+                }
+                l.intoArray(result, i);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package dendron.batch;
+
+import dendron.Errors;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of running one program over a batch of rows, kept in
+ * columns: one column for each variable and one for each print
+ * statement, each with a value per row.
+ * <p>
+ * A row stops when its first error is reported, exactly as a separate
+ * run of that row would have stopped. Its variables keep the values they
+ * had at that point. Its entries in the columns of later print statements
+ * are zero, since those statements never ran for it.
+ *
+ * @author RIT CS
+ */
+public final class BatchResult {
+
+    private final int rows;
+    private final Map<String, int[]> variables;
+    private final List<int[]> prints;
+    private final int[] errors;
+    private final int[] failedAt;
+
+    BatchResult(int rows, Map<String, int[]> variables, List<int[]> prints,
+                int[] errors, int[] failedAt) {
+        this.rows = rows;
+        this.variables = Collections.unmodifiableMap(variables);
+        this.prints = Collections.unmodifiableList(prints);
+        this.errors = errors;
+        this.failedAt = failedAt;
+    }
+
+    /**
+     * @return how many rows were evaluated
+     */
+    public int rows() {
+        return this.rows;
+    }
+
+    /**
+     * @return the final value of every variable, one column per
+     *         variable, including the input variables
+     */
+    public Map<String, int[]> variables() {
+        return this.variables;
+    }
+
+    /**
+     * @return one column for each print statement, in program order
+     */
+    public List<int[]> prints() {
+        return this.prints;
+    }
+
+    /**
+     * @param row a row number
+     * @return the error that stopped that row, or null if it ran to the end
+     */
+    public Errors.Type error(int row) {
+        int code = this.errors[row];
+        return code == 0 ? null : Errors.Type.values()[code - 1];
+    }
+
+    /**
+     * @param row a row number
+     * @return the index of the statement that stopped the row,
+     *         or -1 if it ran to the end
+     */
+    public int failedAt(int row) {
+        return this.failedAt[row];
+    }
+
+    /**
+     * @return how many rows were stopped by an error
+     */
+    public int failures() {
+        int count = 0;
+        for (int code : this.errors) {
+            if (code != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
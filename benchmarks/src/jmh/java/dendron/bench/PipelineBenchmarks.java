@@ -0,0 +1,68 @@
+package dendron.bench;
+
+import dendron.ParseTree;
+import dendron.machine.InstructionReader;
+import dendron.machine.Soros;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One benchmark for each stage of the Dendron pipeline: parsing,
+ * interpreting the tree, compiling it to Soros assembly, assembling
+ * that, and running it on the Soros machine. Each stage starts from
+ * the output of the previous one, prepared once by {@link Workload}.
+ * <p>
+ * The build runs these with the <code>gc</code> profiler, so the
+ * results show the bytes allocated per operation next to the time.
+ *
+ * @author RIT CS
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmarks {
+
+    @Benchmark
+    public ParseTree parseTokens(Workload w) {
+        return new ParseTree(w.tokens);
+    }
+
+    @Benchmark
+    public ParseTree parseText(Workload w) {
+        return new ParseTree(new StringReader(w.source));
+    }
+
+    @Benchmark
+    public void interpret(Workload w) {
+        w.tree.interpret();
+    }
+
+    @Benchmark
+    public void compile(Workload w) {
+        w.tree.compileTo(new PrintWriter(Writer.nullWriter()));
+    }
+
+    @Benchmark
+    public List<Soros.Instruction> assemble(Workload w) {
+        return InstructionReader.assemble(new Scanner(w.assembly));
+    }
+
+    @Benchmark
+    public void execute(Workload w) {
+        w.machine.execute(w.code);
+    }
+}
@@ -0,0 +1,133 @@
+package dendron.bench;
+
+import dendron.ParseTree;
+import dendron.machine.InstructionReader;
+import dendron.machine.Soros;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+
+/**
+ * A generated Dendron program, in every form the benchmarks start from.
+ * The program first assigns each variable a constant, then assigns
+ * random expressions of a fixed depth to them. Every fourth statement
+ * prints instead. Division is always by a non-zero constant, so the
+ * program never stops with an error.
+ * <p>
+ * Dendron prints to standard output, so that is thrown away while the
+ * benchmarks run.
+ *
+ * @author RIT CS
+ */
+@State(Scope.Benchmark)
+public class Workload {
+
+    @Param({"100", "10000"})
+    public int statements;
+
+    @Param({"2", "8"})
+    public int depth;
+
+    @Param({"4", "64"})
+    public int variables;
+
+    /** The program as source tokens */
+    List<String> tokens;
+
+    /** The program as source text */
+    String source;
+
+    /** The parsed program */
+    ParseTree tree;
+
+    /** The program compiled to Soros assembly text */
+    String assembly;
+
+    /** The program assembled into Soros instructions */
+    List<Soros.Instruction> code;
+
+    final Soros machine = new Soros();
+
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        this.tokens = generate(new Random(42));
+        this.source = String.join(" ", this.tokens);
+        this.tree = new ParseTree(this.tokens);
+        StringWriter text = new StringWriter();
+        try (PrintWriter out = new PrintWriter(text)) {
+            this.tree.compileTo(out);
+        }
+        this.assembly = text.toString();
+        this.code = InstructionReader.assemble(new Scanner(this.assembly));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(this.stdout);
+    }
+
+    private List<String> generate(Random random) {
+        List<String> result = new ArrayList<>();
+        for (int v = 0; v < this.variables; v++) {
+            result.add(":=");
+            result.add("v" + v);
+            result.add(Integer.toString(v + 1));
+        }
+        for (int s = 0; s < this.statements; s++) {
+            if (s % 4 == 3) {
+                result.add("#");
+            }
+            else {
+                result.add(":=");
+                result.add("v" + random.nextInt(this.variables));
+            }
+            expression(random, this.depth, result);
+        }
+        return result;
+    }
+
+    private void expression(Random random, int levels, List<String> out) {
+        if (levels == 0) {
+            if (random.nextInt(4) == 0) {
+                out.add(Integer.toString(random.nextInt(100)));
+            }
+            else {
+                out.add("v" + random.nextInt(this.variables));
+            }
+            return;
+        }
+        switch (random.nextInt(6)) {
+            case 0 -> {
+                out.add("/");
+                expression(random, levels - 1, out);
+                out.add(Integer.toString(1 + random.nextInt(9)));
+            }
+            case 1 -> {
+                out.add(random.nextBoolean() ? "_" : "%");
+                expression(random, levels - 1, out);
+            }
+            default -> {
+                out.add(List.of("+", "-", "*").get(random.nextInt(3)));
+                expression(random, levels - 1, out);
+                expression(random, levels - 1, out);
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+import dendron.Dendron;
+import dendron.DendronException;
+import dendron.Result;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Check the embedding API in {@link Dendron}. Random programs, some of
+ * which divide by zero or read a variable that is never assigned, are
+ * interpreted once as a reference. Each one must then give the same
+ * result when compiled and run on the Soros machine (or also fail, if
+ * it failed), and exactly the same result when interpreted many times
+ * at once from a pool of threads.
+ *
+ * @author RIT CS
+ */
+public class DendronApiTest {
+
+    private static final long SEED = 14;
+
+    private static final int PROGRAMS = 200;
+
+    private static final int CALLS = 2_000;
+
+    private static final int THREADS = 8;
+
+    /**
+     * Run the check.
+     * @param args not used
+     * @throws Exception if a thread is interrupted
+     */
+    public static void main( String... args ) throws Exception {
+        RandomPrograms random = new RandomPrograms( SEED );
+        List< String > targets = RandomPrograms.names( "v", 5 );
+        // v5 is never assigned, so the programs that read it fail.
+        List< String > unassigned = RandomPrograms.names( "v", 6 );
+        List< String > sources = new ArrayList<>();
+        List< String > expected = new ArrayList<>();
+        int failures = 0;
+        int errors = 0;
+        for ( int i = 0; i < PROGRAMS; ++i ) {
+            String source = random.assignments( targets ) +
+                            random.program( 12, 3, targets,
+                                            i % 4 == 0 ? unassigned : targets );
+            Result interpreted = Dendron.interpret( source );
+            Result executed = Dendron.execute(
+                    Dendron.compile( new StringReader( source ) ),
+                    value -> {} );
+            sources.add( source );
+            expected.add( describe( interpreted ) );
+            if ( !interpreted.succeeded() ) {
+                ++errors;
+            }
+            // The interpreter works out a divisor before the value it
+            // divides, so when both would fail the two may report
+            // different errors. Only a successful run must match exactly.
+            boolean same = interpreted.succeeded() ?
+                    describe( executed ).equals( describe( interpreted ) ) :
+                    !executed.succeeded();
+            if ( !same ) {
+                ++failures;
+                System.out.println( "Compiled run differs:\n" + source +
+                                    describe( interpreted ) + "\n" +
+                                    describe( executed ) );
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool( THREADS );
+        try {
+            List< Future< Result > > calls = new ArrayList<>();
+            for ( int i = 0; i < CALLS; ++i ) {
+                String source = sources.get( i % PROGRAMS );
+                calls.add( pool.submit( () -> Dendron.interpret( source ) ) );
+            }
+            for ( int i = 0; i < CALLS; ++i ) {
+                String result = describe( calls.get( i ).get() );
+                if ( !result.equals( expected.get( i % PROGRAMS ) ) ) {
+                    ++failures;
+                    System.out.println( "Concurrent call " + i + " differs:\n" +
+                                        expected.get( i % PROGRAMS ) + "\n" +
+                                        result );
+                }
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        System.out.println( PROGRAMS + " programs (" + errors +
+                            " with errors), " + CALLS + " calls on " +
+                            THREADS + " threads." );
+        if ( failures > 0 ) {
+            System.out.println( "FAILED: " + failures + " results differ." );
+            System.exit( 1 );
+        }
+        System.out.println( "PASSED" );
+    }
+
+    /**
+     * @return everything in a result, in a form that can be compared
+     */
+    private static String describe( Result result ) {
+        return Arrays.toString( result.outputs() ) + " " +
+               new TreeMap<>( result.symbols() ) + " " +
+               result.error().map( DendronException::getMessage ).orElse( "" );
+    }
+}
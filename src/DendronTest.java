@@ -1,10 +1,14 @@
+import dendron.DendronException;
+import dendron.Errors;
 import dendron.ParseTree;
+import dendron.Session;
 
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.util.LinkedList;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
@@ -76,6 +80,11 @@ public class DendronTest {
 
     public static int NUM_TESTS = programs.size();
 
+    /**
+     * The argument that starts an interactive session
+     */
+    public static final String SESSION_OPTION = "-session";
+
     /**
      * Run a test on the Dendron programming system
      * @param args if a single number and the number is less than the number of
@@ -87,6 +96,10 @@ public class DendronTest {
      *             if two numbers and they are both in the range of the number
      *             of private stored tests, run the private tests corresponding
      *             to that range;<br>
+     *             if the single argument {@value #SESSION_OPTION}, read
+     *             statements from standard input and run each one as
+     *             soon as it is complete, keeping the variables between
+     *             them;<br>
      *             if other args, consider them tokens
      *             of a Dendron program and run tests on that program;<br>
      *             if no arguments, read the source program from standard
@@ -110,7 +123,10 @@ public class DendronTest {
                     runOneTest( tokenList, console );
                 }
                 case 1 -> {
-                    if ( args[ 0 ].matches( "\\d+" ) ) {
+                    if ( args[ 0 ].equals( SESSION_OPTION ) ) {
+                        runSession();
+                    }
+                    else if ( args[ 0 ].matches( "\\d+" ) ) {
                         int testNum = getTestNumber( args[ 0 ] );
                         System.out.println(
                                 "TEST #" + testNum + System.lineSeparator()
@@ -155,6 +171,41 @@ public class DendronTest {
                 }
             }
         }
+        catch ( DendronException error ) {
+            Errors.abort( error );
+        }
+    }
+
+    /**
+     * Read statements from standard input, a line at a time, running
+     * each one as soon as its last token has been read. An error is
+     * shown and the rest of its line is skipped, but the session goes
+     * on. At the end of the input the variables are shown.
+     */
+    private static void runSession() {
+        Session session = new Session();
+        try ( Scanner text = new Scanner( System.in ) ) {
+            System.out.print( "🌳 " );
+            while ( text.hasNextLine() ) {
+                String line = text.nextLine();
+                if ( line.equals( "." ) ) break; // For IntelliJ console
+                try {
+                    session.feed( line );
+                }
+                catch ( DendronException error ) {
+                    Errors.show( error );
+                }
+                System.out.print( session.isPending() ? "🌿 " : "🌳 " );
+            }
+        }
+        try {
+            session.finish();
+        }
+        catch ( DendronException error ) {
+            Errors.show( error );
+        }
+        System.out.println();
+        Errors.dump( session.variables() );
     }
 
     /**
@@ -172,8 +223,16 @@ public class DendronTest {
      */
     private static void runOneTest( List< String > tokenList, PrintWriter out )
     {
-        ParseTree tree = new ParseTree( tokenList );
+        runOneTest( new ParseTree( tokenList ), out );
+    }
 
+    /**
+     * Run the three phases of {@link #runOneTest(List, PrintWriter)}
+     * on a program that has already been parsed.
+     * @param tree the parsed program
+     * @param out where output should go from the interpreting phase
+     */
+    private static void runOneTest( ParseTree tree, PrintWriter out ) {
         tree.displayProgram();
 
         tree.interpret();
@@ -189,8 +248,6 @@ public class DendronTest {
      * @param dirName the name of the directory containing the files
      */
     private static void runDirOfTests( String dirName, PrintWriter out ) {
-        List< String > tokenList = null;
-        String[] dummy = new String[ 0 ];
         File dir = new File( dirName );
         File[] files = dir.listFiles();
         if ( files == null ) {
@@ -203,15 +260,15 @@ public class DendronTest {
             for ( File file : files ) {
                 System.out.println( "\nTest File " +
                                     file.getName() + ":\n" );
-                tokenList = new ArrayList<>();
-                try ( Scanner fileIn = new Scanner( file ) ) {
-                    fileIn.forEachRemaining( tokenList::add );
+                ParseTree tree;
+                try ( Reader fileIn = new FileReader( file ) ) {
+                    tree = new ParseTree( fileIn );
                 }
-                catch( FileNotFoundException fnfe ) {
-                    System.err.println( fnfe );
+                catch( IOException ioe ) {
+                    System.err.println( ioe );
                     continue;
                 }
-                runOneTest( tokenList, out );
+                runOneTest( tree, out );
                 System.out.println( "\n_________________________" +
                                     "_________________________" +
                                     "_________________________" );
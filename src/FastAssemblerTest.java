@@ -0,0 +1,170 @@
+import dendron.machine.FastAssembler;
+import dendron.machine.InstructionReader;
+import dendron.machine.Soros;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+
+/**
+ * Check that {@link FastAssembler#assemble(Path)} reads every file
+ * exactly as {@link InstructionReader#assemble(Scanner)} does: the same
+ * instructions, the same complaints about illegal instructions, in the
+ * same order, and the same exception for a bad operand. Small files
+ * cover line endings, blank lines, bad mnemonics, the end marker and
+ * bad PUSH constants; big random files are cut into several chunks,
+ * some with those problems placed after the first chunk.
+ *
+ * @author RIT CS
+ */
+public class FastAssemblerTest {
+
+    private static final long SEED = 22;
+
+    /**
+     * Enough lines for a file several times FastAssembler's chunk size
+     */
+    private static final int BIG_LINES = 1_800_000;
+
+    private static final String[] SMALL = {
+            "PUSH 5\r\nSTORE x\r\n\r\nLOAD x\nPRINT",
+            "ADD\rSUB\r",
+            "\n\n",
+            "",
+            "  \t NEG  \n SQRT\nMUL\nDIV\nPRINT extra\nload x",
+            "PUSH +5\n  LOAD   y  z \nFOO 1\n.\nPUSH 3",
+            "PUSH 1\n. trailing\nBAR\n",
+            "PUSH -2147483648\nPUSH 2147483647",
+            "PUSH 2147483648",
+            "PUSH 1x",
+            "PUSH -",
+            "PUSH\n",
+            "LOAD",
+            "STORE \r\n",
+    };
+
+    private static final String[] OPERATIONS =
+            { "ADD", "SUB", "MUL", "DIV", "NEG", "SQRT", "PRINT" };
+
+    /**
+     * Run the check.
+     * @param args not used
+     * @throws IOException if a temporary file cannot be written
+     */
+    public static void main( String... args ) throws IOException {
+        List< String > sources = new ArrayList<>( List.of( SMALL ) );
+        String big = big( new Random( SEED ) );
+        int third = big.length() / 3;
+        sources.add( big );
+        sources.add( insert( insert( big, 2 * third, "FOO 1\r\n" ),
+                             third, "\n\nBAR\n" ) );
+        sources.add( insert( big, 2 * third, "PUSH 12z\n" ) );
+        sources.add( insert( insert( big, 2 * third, "PUSH 12z\n" ),
+                             third + third / 2, ".\n" ) );
+
+        int failures = 0;
+        Path file = Files.createTempFile( "dendron", ".sor" );
+        try {
+            for ( String source: sources ) {
+                Files.writeString( file, source );
+                String expected = run( file, false );
+                String fast = run( file, true );
+                if ( !fast.equals( expected ) ) {
+                    if ( failures++ < 3 ) {
+                        System.out.println( "Assembly differs for " +
+                                            abbreviate( source ) + ":\n" +
+                                            abbreviate( expected ) + "\n" +
+                                            abbreviate( fast ) );
+                    }
+                }
+            }
+        }
+        finally {
+            Files.deleteIfExists( file );
+        }
+
+        System.out.println( sources.size() + " files, the biggest " +
+                            big.length() + " characters." );
+        if ( failures > 0 ) {
+            System.out.println( "FAILED: " + failures + " files differ." );
+            System.exit( 1 );
+        }
+        System.out.println( "PASSED" );
+    }
+
+    /**
+     * Assemble a file and describe everything that came of it.
+     * @param file the assembly code
+     * @param fast true to use FastAssembler
+     * @return the complaints printed, then the instructions or exception
+     */
+    private static String run( Path file, boolean fast ) throws IOException {
+        ByteArrayOutputStream complaints = new ByteArrayOutputStream();
+        PrintStream err = System.err;
+        System.setErr( new PrintStream( complaints, true ) );
+        String outcome;
+        try ( Scanner in = new Scanner( file ) ) {
+            List< Soros.Instruction > code = fast ?
+                    FastAssembler.assemble( file ) :
+                    InstructionReader.assemble( in );
+            StringBuilder text = new StringBuilder();
+            for ( Soros.Instruction instruction: code ) {
+                text.append( instruction.getClass().getSimpleName() )
+                    .append( ' ' ).append( instruction ).append( '\n' );
+            }
+            outcome = code.size() + " instructions\n" + text;
+        }
+        catch ( NumberFormatException | ArrayIndexOutOfBoundsException e ) {
+            outcome = e.toString();
+        }
+        finally {
+            System.setErr( err );
+        }
+        return complaints + outcome;
+    }
+
+    /**
+     * @return random well formed assembly code, one instruction a line
+     */
+    private static String big( Random random ) {
+        StringBuilder code = new StringBuilder();
+        for ( int i = 0; i < BIG_LINES; ++i ) {
+            int kind = random.nextInt( 10 );
+            if ( kind < 3 ) {
+                code.append( "PUSH " )
+                    .append( random.nextInt() >> random.nextInt( 32 ) );
+            }
+            else if ( kind < 5 ) {
+                code.append( "LOAD v" ).append( random.nextInt( 5_000 ) );
+            }
+            else if ( kind < 6 ) {
+                code.append( "STORE v" ).append( random.nextInt( 5_000 ) );
+            }
+            else {
+                code.append( OPERATIONS[ random.nextInt( OPERATIONS.length ) ] );
+            }
+            code.append( i % 7 == 0 ? "\r\n" : "\n" );
+        }
+        return code.toString();
+    }
+
+    /**
+     * @return the source with lines put in at the start of the
+     *         line that the position falls in
+     */
+    private static String insert( String source, int position,
+                                  String lines ) {
+        int at = source.lastIndexOf( '\n', position ) + 1;
+        return source.substring( 0, at ) + lines + source.substring( at );
+    }
+
+    private static String abbreviate( String text ) {
+        return text.length() <= 200 ? text : text.substring( 0, 200 ) + "...";
+    }
+}
@@ -0,0 +1,138 @@
+import dendron.DendronException;
+import dendron.ParseTree;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Check that running a program's independent statements in parallel with
+ * {@link ParseTree#executeParallel} gives exactly what running it in
+ * order gives: the same values printed in the same order, the same
+ * final variables, and the same error when it fails. Random programs of
+ * up to a few hundred statements over up to thirty variables are used,
+ * so that some have long dependency chains and some are wide. Some
+ * trees are also run in parallel while another thread runs the same
+ * tree in order.
+ *
+ * @author RIT CS
+ */
+public class ParallelExecutorTest {
+
+    private static final long SEED = 16;
+
+    private static final int PROGRAMS = 3_000;
+
+    /**
+     * Few enough divisions that most programs run to the end
+     */
+    private static final int DIVISION_PERCENT = 3;
+
+    /**
+     * How many of the programs are also run in parallel while another
+     * thread runs the same tree in order, many times over
+     */
+    private static final int SHARED = 100;
+
+    private static final int SHARED_RUNS = 20;
+
+    /**
+     * Run the check.
+     * @param args not used
+     * @throws InterruptedException if the check is interrupted
+     */
+    public static void main( String... args ) throws InterruptedException {
+        RandomPrograms random = new RandomPrograms( SEED, DIVISION_PERCENT );
+        int failures = 0;
+        int errors = 0;
+        for ( int i = 0; i < PROGRAMS; ++i ) {
+            List< String > names = RandomPrograms.names(
+                    "v", 2 + random.random().nextInt( 30 ) );
+            String source = random.assignments( names ) +
+                            random.program( 5 + random.random().nextInt( 200 ),
+                                            5, names, names );
+            String expected = run( source, false );
+            String parallel = run( source, true );
+            if ( i < SHARED && parallel.equals( expected ) ) {
+                parallel = runShared( source, expected );
+            }
+            if ( expected.contains( "error" ) ) {
+                ++errors;
+            }
+            if ( !parallel.equals( expected ) ) {
+                if ( failures++ < 3 ) {
+                    System.out.println( "Parallel run differs:\n" + source +
+                                        expected + "\n" + parallel );
+                }
+            }
+        }
+
+        System.out.println( PROGRAMS + " programs (" + errors +
+                            " with errors)." );
+        if ( failures > 0 ) {
+            System.out.println( "FAILED: " + failures + " programs differ." );
+            System.exit( 1 );
+        }
+        System.out.println( "PASSED" );
+    }
+
+    /**
+     * Run one tree in order on one thread and in parallel on another,
+     * at the same time, over and over.
+     * @param source the program
+     * @param expected what running it in order gives
+     * @return the expected description if every run gave it,
+     *         otherwise the first one that did not
+     */
+    private static String runShared( String source, String expected )
+            throws InterruptedException {
+        ParseTree tree = new ParseTree( new StringReader( source ) );
+        String[] differs = new String[ 2 ];
+        Thread[] threads = new Thread[ 2 ];
+        for ( int t = 0; t < threads.length; ++t ) {
+            boolean parallel = t == 1;
+            int which = t;
+            threads[ t ] = new Thread( () -> {
+                for ( int k = 0; k < SHARED_RUNS; ++k ) {
+                    String result = run( tree, parallel );
+                    if ( !result.equals( expected ) ) {
+                        differs[ which ] = result;
+                    }
+                }
+            } );
+            threads[ t ].start();
+        }
+        for ( Thread thread: threads ) {
+            thread.join();
+        }
+        return differs[ 1 ] != null ? differs[ 1 ] :
+               differs[ 0 ] != null ? differs[ 0 ] : expected;
+    }
+
+    /**
+     * Run a program and describe everything it did.
+     * @param source the program
+     * @param parallel true to run it in parallel
+     * @return the values printed, then the final variables or the error
+     */
+    private static String run( String source, boolean parallel ) {
+        return run( new ParseTree( new StringReader( source ) ), parallel );
+    }
+
+    private static String run( ParseTree tree, boolean parallel ) {
+        List< Integer > printed = new ArrayList<>();
+        String outcome;
+        try {
+            Map< String, Integer > variables = parallel ?
+                    tree.executeParallel( printed::add ) :
+                    tree.execute( printed::add );
+            outcome = new TreeMap<>( variables ).toString();
+        }
+        catch ( DendronException error ) {
+            outcome = "error " + error.getMessage();
+        }
+        return printed + " " + outcome;
+    }
+}
@@ -0,0 +1,153 @@
+import dendron.DendronException;
+import dendron.ParseTree;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Check that parsing a big program in pieces with
+ * {@link ParseTree#parseParallel(String)} gives exactly what parsing it
+ * in one go gives: the same compiled code, or the same error. The random
+ * programs are several times the size below which the parallel parser
+ * does not split, and errors are put in at random places, most of them
+ * past the first piece, so a piece that fails is not always the first.
+ * Some programs use <code>:=</code> and <code>#</code> as names, which
+ * look like the start of a statement to the splitter.
+ *
+ * @author RIT CS
+ */
+public class ParallelParserTest {
+
+    private static final long SEED = 25;
+
+    /**
+     * Enough statements for a few million characters
+     */
+    private static final int STATEMENTS = 300_000;
+
+    private static final int ERRORS = 18;
+
+    /**
+     * Statements that cannot be parsed, or that take the next
+     * statement's first token as part of themselves
+     */
+    private static final String[] BAD = {
+            "# + 1 ", ":= x ", "@@ ", "# 99999999999 ", ":= ", "# ", ":= 5 6 ",
+    };
+
+    /**
+     * Run the check.
+     * @param args not used
+     */
+    public static void main( String... args ) {
+        Random random = new Random( SEED );
+        String base = program( random );
+        List< String > sources = new ArrayList<>();
+        sources.add( base );
+        for ( int i = 0; i < ERRORS; ++i ) {
+            // Two in three errors go in the second half.
+            int at = random.nextInt( 3 ) == 0 ?
+                    random.nextInt( base.length() / 2 ) :
+                    base.length() / 2 + random.nextInt( base.length() / 2 );
+            at = base.indexOf( '\n', at ) + 1;
+            if ( at == 0 ) {
+                at = base.length();
+            }
+            sources.add( base.substring( 0, at ) + BAD[ i % BAD.length ] +
+                         base.substring( at ) );
+        }
+        sources.add( base + ":= x" );
+        sources.add( base.replace( ":= v1 ", ":= #\n" )
+                         .replace( ":= v2 ", ":=\n:= " ) );
+
+        int failures = 0;
+        int errors = 0;
+        for ( String source: sources ) {
+            String expected = parse( source, false );
+            String parallel = parse( source, true );
+            if ( expected.startsWith( "error" ) ) {
+                ++errors;
+            }
+            if ( !parallel.equals( expected ) ) {
+                if ( failures++ < 3 ) {
+                    System.out.println( "Parallel parse differs:\n" +
+                                        abbreviate( expected ) + "\n" +
+                                        abbreviate( parallel ) );
+                }
+            }
+        }
+
+        System.out.println( sources.size() + " programs of about " +
+                            base.length() + " characters (" + errors +
+                            " with errors)." );
+        if ( failures > 0 ) {
+            System.out.println( "FAILED: " + failures + " programs differ." );
+            System.exit( 1 );
+        }
+        System.out.println( "PASSED" );
+    }
+
+    /**
+     * Parse a program and describe the result.
+     * @param source the program
+     * @param parallel true to parse it in pieces
+     * @return the compiled code, or the error
+     */
+    private static String parse( String source, boolean parallel ) {
+        try {
+            ParseTree tree = parallel ?
+                    ParseTree.parseParallel( source ) :
+                    new ParseTree( new StringReader( source ) );
+            return tree.compile().toString();
+        }
+        catch ( DendronException error ) {
+            return "error " + error.getMessage();
+        }
+    }
+
+    /**
+     * @return random statements over ten variables, some
+     *         on one line and some on several
+     */
+    private static String program( Random random ) {
+        StringBuilder source = new StringBuilder();
+        for ( int i = 0; i < STATEMENTS; ++i ) {
+            if ( random.nextBoolean() ) {
+                source.append( ":= v" ).append( random.nextInt( 10 ) )
+                      .append( ' ' );
+            }
+            else {
+                source.append( "# " );
+            }
+            expression( random, source, 3 );
+            source.append( random.nextInt( 3 ) == 0 ? "\n" : " " );
+        }
+        return source.toString();
+    }
+
+    private static void expression( Random random, StringBuilder source,
+                                    int depth ) {
+        int kind = random.nextInt( depth == 0 ? 2 : 4 );
+        if ( kind == 0 ) {
+            source.append( random.nextInt( 100 ) ).append( ' ' );
+        }
+        else if ( kind == 1 ) {
+            source.append( 'v' ).append( random.nextInt( 10 ) ).append( ' ' );
+        }
+        else if ( kind == 2 ) {
+            source.append( "_ " );
+            expression( random, source, depth - 1 );
+        }
+        else {
+            source.append( "+ " );
+            expression( random, source, depth - 1 );
+            expression( random, source, depth - 1 );
+        }
+    }
+
+    private static String abbreviate( String text ) {
+        return text.length() <= 200 ? text : text.substring( 0, 200 ) + "...";
+    }
+}
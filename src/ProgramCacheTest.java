@@ -0,0 +1,278 @@
+import dendron.Dendron;
+import dendron.DendronException;
+import dendron.ParseTree;
+import dendron.Result;
+import dendron.cache.ProgramCache;
+import dendron.machine.Soros;
+import dendron.optimize.DagCompiler;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Check {@link ProgramCache}: that it throws out the least recently used
+ * programs when it is over its size, that its statistics add up, that
+ * compiled code saved on disk is used by a later cache and a damaged
+ * image is not, that every caller gets a parse tree of its own, and that
+ * many threads can look programs up at once and always get the right
+ * code. Code from the cache must give what interpreting the program
+ * gives.
+ *
+ * @author RIT CS
+ */
+public class ProgramCacheTest {
+
+    private static final long SEED = 18;
+
+    private static final int PROGRAMS = 40;
+
+    private static final int CALLS = 4_000;
+
+    private static final int THREADS = 8;
+
+    private static int failures = 0;
+
+    /**
+     * Run the check.
+     * @param args not used
+     * @throws Exception if a thread is interrupted or a temporary
+     *         directory cannot be used
+     */
+    public static void main( String... args ) throws Exception {
+        RandomPrograms random = new RandomPrograms( SEED );
+        List< String > names = RandomPrograms.names( "v", 4 );
+        List< String > sources = new ArrayList<>();
+        for ( int i = 0; i < PROGRAMS; ++i ) {
+            sources.add( random.assignments( names ) +
+                         random.program( 10, 3, names, names ) );
+        }
+
+        eviction( sources );
+        disk( sources );
+        trees( sources );
+        concurrent( sources );
+
+        long errors = sources.stream()
+                             .filter( s -> interpret( s ).endsWith( "error" ) )
+                             .count();
+        System.out.println( PROGRAMS + " programs (" + errors +
+                            " with errors), " + CALLS +
+                            " concurrent lookups on " + THREADS +
+                            " threads." );
+        if ( failures > 0 ) {
+            System.out.println( "FAILED: " + failures + " checks failed." );
+            System.exit( 1 );
+        }
+        System.out.println( "PASSED" );
+    }
+
+    /**
+     * Fill a cache that holds exactly three programs, use the first one
+     * again, and add a fourth: the second must be the one thrown out.
+     */
+    private static void eviction( List< String > sources ) {
+        long[] sizes = new long[ 4 ];
+        for ( int i = 0; i < sizes.length; ++i ) {
+            ProgramCache measure = new ProgramCache( Long.MAX_VALUE );
+            measure.get( new StringReader( sources.get( i ) ) );
+            sizes[ i ] = measure.stats().bytes();
+        }
+        long capacity = sizes[ 0 ] + sizes[ 1 ] + sizes[ 2 ] +
+                        Math.min( sizes[ 1 ], sizes[ 3 ] ) - 1;
+        ProgramCache cache = new ProgramCache( capacity );
+        for ( int i = 0; i < 3; ++i ) {
+            cache.get( new StringReader( sources.get( i ) ) );
+        }
+        // The same tokens, written differently, are the same program.
+        cache.get( new StringReader(
+                "  " + sources.get( 0 ).replace( "\n", " \n\t" ) ) );
+        cache.get( new StringReader( sources.get( 3 ) ) );
+        expect( "after eviction", cache.stats(),
+                new ProgramCache.Stats( 1, 4, 0, 1, 3,
+                                        sizes[ 0 ] + sizes[ 2 ] +
+                                        sizes[ 3 ] ) );
+
+        cache.get( new StringReader( sources.get( 0 ) ) );
+        cache.get( new StringReader( sources.get( 2 ) ) );
+        cache.get( new StringReader( sources.get( 3 ) ) );
+        expect( "the newer programs stay", cache.stats().hits(), 4L );
+        cache.get( new StringReader( sources.get( 1 ) ) );
+        expect( "the least recently used program is gone",
+                cache.stats().misses(), 5L );
+        expect( "the cache stays within its size",
+                cache.stats().bytes() <= capacity, true );
+
+        cache.clear();
+        expect( "after clear", cache.stats(),
+                new ProgramCache.Stats( 4, 5, 0, 2, 0, 0 ) );
+
+        ProgramCache tiny = new ProgramCache( 1 );
+        tiny.get( new StringReader( sources.get( 0 ) ) );
+        tiny.get( new StringReader( sources.get( 1 ) ) );
+        expect( "the newest program is always kept", tiny.stats().entries(),
+                1 );
+    }
+
+    /**
+     * Save code from one cache and find it with another.
+     */
+    private static void disk( List< String > sources ) throws IOException {
+        Path directory = Files.createTempDirectory( "dendron-cache" );
+        try {
+            ProgramCache first = new ProgramCache( Long.MAX_VALUE, directory );
+            for ( int i = 0; i < 3; ++i ) {
+                first.get( new StringReader( sources.get( i ) ) );
+            }
+            List< Path > images;
+            try ( Stream< Path > files = Files.list( directory ) ) {
+                images = files.sorted().toList();
+            }
+            expect( "one image per program", images.size(), 3 );
+
+            // Damage one image; it must be compiled again, not used.
+            Files.write( images.get( 0 ), new byte[]{ 1, 2, 3 } );
+            ProgramCache second = new ProgramCache( Long.MAX_VALUE,
+                                                    directory );
+            for ( int i = 0; i < 3; ++i ) {
+                String source = sources.get( i );
+                ProgramCache.Entry entry =
+                        second.get( new StringReader( source ) );
+                expect( "code from disk for program " + i,
+                        run( entry.code() ), interpret( source ) );
+            }
+            expect( "disk hits", second.stats().diskHits(), 2L );
+            expect( "a damaged image is replaced",
+                    Files.size( images.get( 0 ) ) > 3, true );
+        }
+        finally {
+            try ( Stream< Path > files = Files.walk( directory ) ) {
+                for ( Path file: files.sorted( Comparator.reverseOrder() )
+                                      .toList() ) {
+                    Files.deleteIfExists( file );
+                }
+            }
+        }
+    }
+
+    /**
+     * Each caller's tree is its own, so optimizing one changes nothing
+     * for anyone else, and optimized code gives the same results.
+     */
+    private static void trees( List< String > sources ) {
+        ProgramCache cache = new ProgramCache( Long.MAX_VALUE );
+        for ( String source: sources ) {
+            ProgramCache.Entry entry = cache.get( new StringReader( source ) );
+            ParseTree mine = entry.tree();
+            ParseTree theirs = entry.tree();
+            expect( "trees are not shared", mine != theirs, true );
+            mine.optimize();
+            String expected = interpret( source );
+            expect( "another caller's tree", execute( theirs ), expected );
+            expect( "the optimized tree", execute( mine ), expected );
+            expect( "optimized code", run( entry.optimizedCode() ),
+                    expected );
+        }
+    }
+
+    /**
+     * Look programs up from many threads at once, in a cache too small
+     * for all of them, and run what comes back.
+     */
+    private static void concurrent( List< String > sources )
+            throws Exception {
+        List< String > expected = new ArrayList<>();
+        long total = 0;
+        for ( String source: sources ) {
+            expected.add( interpret( source ) );
+            ProgramCache measure = new ProgramCache( Long.MAX_VALUE );
+            measure.get( new StringReader( source ) );
+            total += measure.stats().bytes();
+        }
+        long capacity = total / 4;
+        ProgramCache cache = new ProgramCache( capacity );
+        ExecutorService pool = Executors.newFixedThreadPool( THREADS );
+        try {
+            List< Future< String > > calls = new ArrayList<>();
+            for ( int i = 0; i < CALLS; ++i ) {
+                // Favour a few programs, so that there are hits as
+                // well as misses and evictions.
+                int which = i % 3 == 0 ? i % sources.size() : i % 5;
+                String source = sources.get( which );
+                calls.add( pool.submit( () -> run(
+                        cache.get( new StringReader( source ) ).code() ) ) );
+            }
+            for ( int i = 0; i < CALLS; ++i ) {
+                int which = i % 3 == 0 ? i % sources.size() : i % 5;
+                expect( "concurrent lookup " + i, calls.get( i ).get(),
+                        expected.get( which ) );
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+        ProgramCache.Stats stats = cache.stats();
+        expect( "every lookup is counted once",
+                stats.hits() + stats.misses(), (long)CALLS );
+        expect( "evictions happened", stats.evictions() > 0, true );
+        expect( "the cache stays within its size",
+                stats.bytes() <= capacity || stats.entries() == 1, true );
+        expect( "what is left adds up",
+                stats.misses() - stats.evictions() >= stats.entries(), true );
+    }
+
+    private static String interpret( String source ) {
+        return describe( Dendron.interpret( source ) );
+    }
+
+    private static String execute( ParseTree tree ) {
+        List< Integer > printed = new ArrayList<>();
+        try {
+            return printed + " " +
+                   new TreeMap<>( tree.execute( printed::add ) ) + " ";
+        }
+        catch ( DendronException error ) {
+            return printed + " error";
+        }
+    }
+
+    private static String run( List< Soros.Instruction > code ) {
+        return describe( Dendron.execute( code, value -> {} ) );
+    }
+
+    /**
+     * @return what a run printed and left behind, leaving out compiler
+     *         temporaries; a failed run is only described as failed,
+     *         since the interpreter and the machine may differ in which
+     *         error they meet first
+     */
+    private static String describe( Result result ) {
+        if ( !result.succeeded() ) {
+            return Arrays.toString( result.outputs() ) + " error";
+        }
+        Map< String, Integer > symbols = new TreeMap<>( result.symbols() );
+        symbols.keySet().removeIf( DagCompiler::isTemporary );
+        return Arrays.toString( result.outputs() ) + " " + symbols + " ";
+    }
+
+    private static void expect( String what, Object actual,
+                                Object expected ) {
+        if ( !actual.equals( expected ) ) {
+            if ( failures++ < 5 ) {
+                System.out.println( what + ": got " + actual +
+                                    ", expected " + expected );
+            }
+        }
+    }
+}
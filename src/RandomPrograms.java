@@ -0,0 +1,140 @@
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Makes random Dendron programs for the checks that compare two ways of
+ * parsing or running the same program. The programs use every operator,
+ * small constants (so that division by zero comes up now and then), and
+ * whatever variable names the check asks for, which may include names
+ * that are never assigned.
+ *
+ * @author RIT CS
+ */
+public class RandomPrograms {
+
+    /**
+     * Division is listed once, the other binary operators twice each,
+     * so that most programs get some way before dividing by zero.
+     */
+    private static final String[] OPERATORS =
+            { "+", "-", "*", "+", "-", "*", "/", "_", "%" };
+
+    private final Random random;
+
+    private final int divisionPercent;
+
+    /**
+     * @param seed the seed, so that a failing check can be repeated
+     */
+    public RandomPrograms( long seed ) {
+        this( seed, 100 );
+    }
+
+    /**
+     * @param seed the seed, so that a failing check can be repeated
+     * @param divisionPercent how many divisions in a hundred to keep;
+     *                        the rest become additions, so that long
+     *                        programs do not all divide by zero
+     */
+    public RandomPrograms( long seed, int divisionPercent ) {
+        this.random = new Random( seed );
+        this.divisionPercent = divisionPercent;
+    }
+
+    /**
+     * @return the source of randomness, for choices the check makes itself
+     */
+    public Random random() {
+        return this.random;
+    }
+
+    /**
+     * Make an expression in prefix form.
+     * @param depth how many operators deep it may go
+     * @param names the variables it may read
+     * @return the expression's tokens, separated by spaces
+     */
+    public String expression( int depth, List< String > names ) {
+        StringBuilder out = new StringBuilder();
+        expression( out, depth, names );
+        return out.toString().strip();
+    }
+
+    private void expression( StringBuilder out, int depth,
+                             List< String > names ) {
+        if ( depth == 0 || this.random.nextInt( 3 ) == 0 ) {
+            if ( this.random.nextInt( 5 ) < 3 ) {
+                out.append( names.get( this.random.nextInt( names.size() ) ) );
+            }
+            else {
+                out.append( this.random.nextInt( 7 ) - 3 );
+            }
+            out.append( ' ' );
+            return;
+        }
+        String operator = OPERATORS[ this.random.nextInt( OPERATORS.length ) ];
+        if ( operator.equals( "/" ) &&
+             this.random.nextInt( 100 ) >= this.divisionPercent ) {
+            operator = "+";
+        }
+        out.append( operator ).append( ' ' );
+        expression( out, depth - 1, names );
+        if ( !operator.equals( "_" ) && !operator.equals( "%" ) ) {
+            expression( out, depth - 1, names );
+        }
+    }
+
+    /**
+     * Make a program, one statement per line. About one statement in
+     * four is a print; the rest are assignments.
+     * @param statements how many statements
+     * @param depth how many operators deep each expression may go
+     * @param targets the variables that may be assigned
+     * @param names the variables that may be read
+     * @return the program's source
+     */
+    public String program( int statements, int depth, List< String > targets,
+                           List< String > names ) {
+        StringBuilder out = new StringBuilder();
+        for ( int i = 0; i < statements; ++i ) {
+            if ( this.random.nextInt( 4 ) == 0 ) {
+                out.append( "# " );
+            }
+            else {
+                out.append( ":= " )
+                   .append( targets.get( this.random.nextInt( targets.size() ) ) )
+                   .append( ' ' );
+            }
+            out.append( expression( depth, names ) ).append( '\n' );
+        }
+        return out.toString();
+    }
+
+    /**
+     * Make a start for a program that gives each variable a small value,
+     * so that the random statements after it can read them.
+     * @param targets the variables to assign
+     * @return one assignment per line
+     */
+    public String assignments( List< String > targets ) {
+        StringBuilder out = new StringBuilder();
+        for ( String target: targets ) {
+            out.append( ":= " ).append( target ).append( ' ' )
+               .append( this.random.nextInt( 9 ) + 1 ).append( '\n' );
+        }
+        return out.toString();
+    }
+
+    /**
+     * @param prefix the start of every name
+     * @param count how many names
+     * @return prefix0, prefix1, ...
+     */
+    public static List< String > names( String prefix, int count ) {
+        String[] names = new String[ count ];
+        for ( int i = 0; i < count; ++i ) {
+            names[ i ] = prefix + i;
+        }
+        return List.of( names );
+    }
+}
@@ -0,0 +1,193 @@
+import dendron.DendronException;
+import dendron.ParseTree;
+import dendron.reactive.ReactiveProgram;
+import dendron.treenodes.Frame;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * Check that a {@link ReactiveProgram} stays exactly in step with running
+ * its program from the start. Random programs read a few inputs; after
+ * every random change to the inputs, the reactive program's variables,
+ * printed values and error must be what a full run with those inputs
+ * gives, and the changes it reports must be exactly the outputs that
+ * differ from before the update.
+ *
+ * @author RIT CS
+ */
+public class ReactiveProgramTest {
+
+    private static final long SEED = 17;
+
+    private static final int PROGRAMS = 1_500;
+
+    private static final int UPDATES = 8;
+
+    private static final int DIVISION_PERCENT = 25;
+
+    /**
+     * Run the check.
+     * @param args not used
+     */
+    public static void main( String... args ) {
+        RandomPrograms random = new RandomPrograms( SEED, DIVISION_PERCENT );
+        Random values = random.random();
+        List< String > inputs = RandomPrograms.names( "in", 4 );
+        int failures = 0;
+        int errors = 0;
+        for ( int p = 0; p < PROGRAMS; ++p ) {
+            List< String > targets =
+                    RandomPrograms.names( "v", 2 + values.nextInt( 10 ) );
+            List< String > names = new ArrayList<>( targets );
+            names.addAll( inputs );
+            StringBuilder source = new StringBuilder();
+            for ( int v = 0; v < targets.size(); ++v ) {
+                source.append( ":= " ).append( targets.get( v ) ).append( ' ' )
+                      .append( inputs.get( v % inputs.size() ) ).append( '\n' );
+            }
+            source.append( random.program( 5 + values.nextInt( 60 ), 3,
+                                           targets, names ) );
+            String program = source.toString();
+            int prints = (int)program.lines()
+                                     .filter( l -> l.startsWith( "#" ) )
+                                     .count();
+
+            ReactiveProgram live =
+                    new ParseTree( new StringReader( program ) ).reactive();
+            Map< String, Integer > set = new HashMap<>();
+            Map< String, Integer > before = live.variables();
+            List< Optional< Integer > > printedBefore = printed( live, prints );
+            for ( int u = 0; u < UPDATES; ++u ) {
+                // The first update sets every input; later ones change
+                // about a third of them.
+                Map< String, Integer > change = new HashMap<>();
+                for ( String input: live.inputs() ) {
+                    if ( u == 0 || values.nextInt( 3 ) == 0 ) {
+                        change.put( input, values.nextInt( 9 ) - 4 );
+                    }
+                }
+                set.putAll( change );
+                ReactiveProgram.Changes changes = live.update( change );
+
+                String problem = compare( live, program, set );
+                if ( problem == null ) {
+                    problem = checkChanges( changes, before, live.variables(),
+                                            printedBefore,
+                                            printed( live, prints ) );
+                }
+                if ( live.error().isPresent() ) {
+                    ++errors;
+                }
+                if ( problem != null && failures++ < 3 ) {
+                    System.out.println( problem + " after setting " + set +
+                                        " in\n" + program );
+                }
+                before = live.variables();
+                printedBefore = printed( live, prints );
+            }
+        }
+
+        System.out.println( PROGRAMS * UPDATES + " updates over " + PROGRAMS +
+                            " programs (" + errors + " with errors)." );
+        if ( failures > 0 ) {
+            System.out.println( "FAILED: " + failures + " updates differ." );
+            System.exit( 1 );
+        }
+        System.out.println( "PASSED" );
+    }
+
+    private static List< Optional< Integer > > printed( ReactiveProgram live,
+                                                        int prints ) {
+        List< Optional< Integer > > printed = new ArrayList<>();
+        for ( int k = 0; k < prints; ++k ) {
+            printed.add( live.print( k ) );
+        }
+        return printed;
+    }
+
+    /**
+     * Run the program from the start with the inputs set so far.
+     * @return what differs from the reactive program, or null
+     */
+    private static String compare( ReactiveProgram live, String program,
+                                   Map< String, Integer > inputs ) {
+        List< Integer > printed = new ArrayList<>();
+        Frame frame = new Frame( printed::add );
+        for ( Map.Entry< String, Integer > input: inputs.entrySet() ) {
+            frame.set( frame.resolve( input.getKey() ), input.getValue() );
+        }
+        Map< String, Integer > variables = null;
+        DendronException error = null;
+        try {
+            variables = new ParseTree( new StringReader( program ) )
+                    .execute( frame );
+        }
+        catch ( DendronException e ) {
+            error = e;
+        }
+
+        // Everything before the error is printed either way.
+        for ( int k = 0; k < printed.size(); ++k ) {
+            if ( !live.print( k ).equals( Optional.of( printed.get( k ) ) ) ) {
+                return "print " + k + " differs";
+            }
+        }
+        if ( error != null ) {
+            return live.error().isPresent() &&
+                   live.error().get().getMessage()
+                       .equals( error.getMessage() ) ?
+                    null : "error differs: " + error.getMessage() +
+                           " vs " + live.error();
+        }
+        if ( live.error().isPresent() ) {
+            return "unexpected error " + live.error().get().getMessage();
+        }
+        // The full run's table also holds the inputs it was given.
+        for ( Map.Entry< String, Integer > variable:
+                live.variables().entrySet() ) {
+            if ( !variable.getValue().equals(
+                    variables.get( variable.getKey() ) ) ) {
+                return "variables differ: " + variables + " vs " +
+                       live.variables();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return what is wrong with the reported changes, or null
+     */
+    private static String checkChanges(
+            ReactiveProgram.Changes changes,
+            Map< String, Integer > before, Map< String, Integer > after,
+            List< Optional< Integer > > printedBefore,
+            List< Optional< Integer > > printedAfter ) {
+        for ( Map.Entry< String, Integer > variable: after.entrySet() ) {
+            boolean changed =
+                    !variable.getValue().equals( before.get( variable.getKey() ) );
+            Integer reported = changes.variables().get( variable.getKey() );
+            if ( changed ? !variable.getValue().equals( reported ) :
+                           reported != null ) {
+                return "change to " + variable.getKey() + " misreported";
+            }
+        }
+        for ( int k = 0; k < printedAfter.size(); ++k ) {
+            Optional< Integer > now = printedAfter.get( k );
+            Integer reported = changes.prints().get( k );
+            if ( now.isEmpty() ) {
+                continue;
+            }
+            boolean changed = !now.equals( printedBefore.get( k ) );
+            if ( changed ? !now.get().equals( reported ) : reported != null ) {
+                return "change to print " + k + " misreported";
+            }
+        }
+        return null;
+    }
+}
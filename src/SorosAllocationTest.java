@@ -0,0 +1,111 @@
+import dendron.machine.Soros;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Check that the Soros machine does not allocate memory for each
+ * arithmetic instruction it executes. Two programs that differ only in
+ * length are run, and the number of bytes the thread allocated for each
+ * is compared using the JVM's per-thread allocation counters. Anything
+ * allocated per instruction would show up as a difference proportional
+ * to the extra length.
+ *
+ * @author RIT CS
+ */
+public class SorosAllocationTest {
+
+    /**
+     * How many more bytes the long program may allocate than the short
+     * one before the test fails. This covers noise from the counters
+     * themselves, not anything per instruction.
+     */
+    private static final long SLACK = 1024;
+
+    private static final int SHORT_REPEATS = 1_000;
+
+    private static final int LONG_REPEATS = 1_000_000;
+
+    private static final int INSTRS_PER_REPEAT = 8;
+
+    /**
+     * Run the check.
+     * @param args not used
+     */
+    public static void main( String... args ) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean)
+                        ManagementFactory.getThreadMXBean();
+        if ( !threads.isThreadAllocatedMemorySupported() ) {
+            System.out.println( "Allocation counters not supported; skipped." );
+            return;
+        }
+        threads.setThreadAllocatedMemoryEnabled( true );
+
+        List< Soros.Instruction > shortProgram = arithmetic( SHORT_REPEATS );
+        List< Soros.Instruction > longProgram = arithmetic( LONG_REPEATS );
+        Soros machine = new Soros();
+
+        PrintStream console = System.out;
+        System.setOut( new PrintStream( OutputStream.nullOutputStream() ) );
+        long shortBytes;
+        long longBytes;
+        try {
+            // Warm up so that class loading and compilation are not counted.
+            for ( int i = 0; i < 5; ++i ) {
+                machine.execute( longProgram );
+            }
+            long thread = Thread.currentThread().getId();
+            long before = threads.getThreadAllocatedBytes( thread );
+            machine.execute( shortProgram );
+            long middle = threads.getThreadAllocatedBytes( thread );
+            machine.execute( longProgram );
+            long after = threads.getThreadAllocatedBytes( thread );
+            shortBytes = middle - before;
+            longBytes = after - middle;
+        }
+        finally {
+            System.setOut( console );
+        }
+
+        long extraInstructions =
+                (long)( LONG_REPEATS - SHORT_REPEATS ) * INSTRS_PER_REPEAT;
+        System.out.println( "Short program allocated " + shortBytes +
+                            " bytes, long program allocated " + longBytes +
+                            " bytes (" + extraInstructions +
+                            " more instructions)." );
+        if ( longBytes - shortBytes > SLACK ) {
+            System.out.println( "FAILED: arithmetic path allocates." );
+            System.exit( 1 );
+        }
+        System.out.println( "PASSED" );
+    }
+
+    /**
+     * Build a program that repeatedly pushes values too large for the
+     * Integer cache and combines them with every arithmetic instruction.
+     * @param repeats how many times to repeat the basic block
+     * @return the program, ending with an empty stack
+     */
+    private static List< Soros.Instruction > arithmetic( int repeats ) {
+        List< Soros.Instruction > program = new ArrayList<>();
+        program.add( new Soros.PushConst( 100_000 ) );
+        for ( int i = 0; i < repeats; ++i ) {
+            program.add( new Soros.PushConst( 1_000_003 ) );
+            program.add( new Soros.Add() );
+            program.add( new Soros.PushConst( 3 ) );
+            program.add( new Soros.Multiply() );
+            program.add( new Soros.PushConst( 70_001 ) );
+            program.add( new Soros.Subtract() );
+            program.add( new Soros.Negate() );
+            program.add( new Soros.SquareRoot() );
+        }
+        program.add( new Soros.PushConst( 7 ) );
+        program.add( new Soros.Divide() );
+        program.add( new Soros.Store( "result" ) );
+        return program;
+    }
+}
@@ -0,0 +1,192 @@
+import dendron.Dendron;
+import dendron.DendronException;
+import dendron.Errors;
+import dendron.machine.InstructionReader;
+import dendron.machine.Soros;
+import dendron.machine.SorosProfile;
+import dendron.machine.Superinstructions;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.EmptyStackException;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Check {@link InstructionReader#verify(List)} against the Soros machine
+ * itself. For random compiled programs, the depth verify works out must
+ * be exactly the deepest the stack gets in a profiled run. Each program
+ * is then broken, by taking out an instruction that pushes or putting
+ * in an extra ADD, and verify must report
+ * {@link Errors.Type#STACK_UNDERFLOW} at the very instruction where the
+ * machine finds the stack empty. Both are checked again on the same
+ * code with {@link Superinstructions fused} instructions. The programs
+ * do not divide and read only variables they have assigned, so running
+ * them can only fail by popping an empty stack.
+ * <p>
+ * Also check that {@link Soros#pop()} called from outside a run still
+ * refuses to pop an empty stack and leaves the machine usable.
+ *
+ * @author RIT CS
+ */
+public class SorosVerifyTest {
+
+    private static final long SEED = 21;
+
+    private static final int PROGRAMS = 500;
+
+    private static int failures = 0;
+
+    /**
+     * Run the check.
+     * @param args not used
+     */
+    public static void main( String... args ) {
+        RandomPrograms random = new RandomPrograms( SEED, 0 );
+        Random choices = random.random();
+        List< String > names = RandomPrograms.names( "v", 4 );
+        int broken = 0;
+        for ( int i = 0; i < PROGRAMS; ++i ) {
+            String source = random.assignments( names ) +
+                            random.program( 12, 4, names, names );
+            List< Soros.Instruction > code =
+                    Dendron.compile( new StringReader( source ) );
+            List< Soros.Instruction > fused =
+                    Superinstructions.optimize( code );
+
+            int depth = deepest( code );
+            expect( "depth of program " + i, verify( code ),
+                    Integer.toString( depth ) );
+            expect( "depth of fused program " + i, verify( fused ),
+                    Integer.toString( depth ) );
+
+            for ( List< Soros.Instruction > bad:
+                    List.of( withoutPush( code, choices ),
+                             withExtraAdd( code, choices ) ) ) {
+                int at = underflow( bad );
+                if ( at < 0 ) {
+                    expect( "broken program " + i + " fails", "ran", "" );
+                    continue;
+                }
+                ++broken;
+                String expected = "underflow: " + bad.get( at ) +
+                                  " at instruction " + at;
+                expect( "broken program " + i, verify( bad ), expected );
+                List< Soros.Instruction > badFused =
+                        Superinstructions.optimize( bad );
+                expect( "broken fused program " + i, verify( badFused ),
+                        expected );
+                expect( "broken fused program " + i + " runs",
+                        Integer.toString( underflow( badFused ) >= 0 ?
+                                          1 : 0 ), "1" );
+            }
+        }
+        outsidePop();
+
+        System.out.println( PROGRAMS + " programs and " + broken +
+                            " broken ones verified." );
+        if ( failures > 0 ) {
+            System.out.println( "FAILED: " + failures + " checks failed." );
+            System.exit( 1 );
+        }
+        System.out.println( "PASSED" );
+    }
+
+    /**
+     * @return the depth verify gives, or what it reported
+     */
+    private static String verify( List< Soros.Instruction > code ) {
+        try {
+            return Integer.toString(
+                    InstructionReader.verify( Superinstructions.expand( code ) ) );
+        }
+        catch ( DendronException error ) {
+            return ( error.getType() == Errors.Type.STACK_UNDERFLOW ?
+                     "underflow: " : error.getType() + ": " ) +
+                   error.getInfo();
+        }
+    }
+
+    /**
+     * @return the deepest the stack gets when the program is run
+     */
+    private static int deepest( List< Soros.Instruction > code ) {
+        SorosProfile profile = new SorosProfile( 2 );
+        new Soros( value -> {} ).run( code, profile );
+        return profile.maxStackDepth();
+    }
+
+    /**
+     * Run a program until it pops an empty stack.
+     * @return which instruction did, counting the parts of fused
+     *         instructions, or -1 if the program ran to the end
+     */
+    private static int underflow( List< Soros.Instruction > code ) {
+        SorosProfile profile = new SorosProfile( 2 );
+        try {
+            new Soros( value -> {} ).run( code, profile );
+            return -1;
+        }
+        catch ( EmptyStackException underflow ) {
+            // Only the instructions that finished have been counted.
+            return (int)profile.instructions();
+        }
+    }
+
+    /**
+     * @return the program without one of its PUSH or LOAD instructions
+     */
+    private static List< Soros.Instruction > withoutPush(
+            List< Soros.Instruction > code, Random choices ) {
+        List< Integer > pushes = new ArrayList<>();
+        for ( int pc = 0; pc < code.size(); ++pc ) {
+            Soros.Opcode op = ( (Soros.Primitive)code.get( pc ) ).opcode();
+            if ( op == Soros.Opcode.PUSH || op == Soros.Opcode.LOAD ) {
+                pushes.add( pc );
+            }
+        }
+        List< Soros.Instruction > bad = new ArrayList<>( code );
+        bad.remove( (int)pushes.get( choices.nextInt( pushes.size() ) ) );
+        return bad;
+    }
+
+    /**
+     * @return the program with an ADD put in somewhere
+     */
+    private static List< Soros.Instruction > withExtraAdd(
+            List< Soros.Instruction > code, Random choices ) {
+        List< Soros.Instruction > bad = new ArrayList<>( code );
+        bad.add( choices.nextInt( code.size() + 1 ), new Soros.Add() );
+        return bad;
+    }
+
+    /**
+     * Popping an empty stack from outside a run is refused, and the
+     * machine goes on working.
+     */
+    private static void outsidePop() {
+        Soros machine = new Soros( value -> {} );
+        machine.run( List.of() );
+        String outcome;
+        try {
+            outcome = Integer.toString( machine.pop() );
+        }
+        catch ( EmptyStackException e ) {
+            outcome = "empty";
+        }
+        expect( "pop of an empty stack", outcome, "empty" );
+        machine.push( 7 );
+        expect( "push and pop after that",
+                Integer.toString( machine.pop() ), "7" );
+    }
+
+    private static void expect( String what, String actual,
+                                String expected ) {
+        if ( !actual.equals( expected ) ) {
+            if ( failures++ < 5 ) {
+                System.out.println( what + ": got " + actual +
+                                    ", expected " + expected );
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package dendron;
+
+import dendron.machine.InstructionReader;
+import dendron.machine.Soros;
+import dendron.machine.Superinstructions;
+import dendron.treenodes.Frame;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * The way to use Dendron from inside another Java program. Nothing here
+ * writes to standard output or stops the JVM. A program's output goes to
+ * a printer chosen for each call, and errors come back as a
+ * {@link DendronException}.
+ * <p>
+ * Every call works on its own parse tree or machine, so any number of
+ * threads can use this class at the same time.
+ *
+ * @author RIT CS
+ */
+public final class Dendron {
+
+    private static final IntConsumer NO_PRINTER = value -> {};
+
+    private Dendron() {
+    }
+
+    /**
+     * Parse a program.
+     * @param source the text of the program
+     * @return the parse tree
+     * @throws DendronException if the program is not well formed
+     */
+    public static ParseTree parse(Reader source) {
+        return new ParseTree(source);
+    }
+
+    /**
+     * Parse a program and compile it for the Soros machine.
+     * @param source the text of the program
+     * @return the machine instructions
+     * @throws DendronException if the program is not well formed
+     */
+    public static List<Soros.Instruction> compile(Reader source) {
+        return parse(source).compile();
+    }
+
+    /**
+     * Parse and interpret a program.
+     * @param source the text of the program
+     * @return the program's output and final variables, or its error
+     */
+    public static Result interpret(String source) {
+        return interpret(new StringReader(source), NO_PRINTER);
+    }
+
+    /**
+     * Parse and interpret a program.
+     * @param source the text of the program
+     * @param printer also receives each value the program prints,
+     *                as soon as it is printed
+     * @return the program's output and final variables, or the error
+     *         that stopped it from being parsed or run
+     */
+    public static Result interpret(Reader source, IntConsumer printer) {
+        Outputs outputs = new Outputs(printer);
+        Frame frame = new Frame(outputs);
+        try {
+            ParseTree tree = parse(source);
+            return outputs.result(tree.execute(frame), null);
+        }
+        catch (DendronException error) {
+            return outputs.result(frame.toMap(), error);
+        }
+    }
+
+    /**
+     * Run compiled code on a new Soros machine. The code is checked with
+     * {@link InstructionReader#verify(List)} first, so code that would
+     * pop an empty stack is rejected before any of it runs.
+     * @param code the machine instructions
+     * @param printer also receives each value the program prints,
+     *                as soon as it is printed
+     * @return the program's output and final variables, or the error
+     *         that stopped it
+     */
+    public static Result execute(List<Soros.Instruction> code,
+                                  IntConsumer printer) {
+        Outputs outputs = new Outputs(printer);
+        Soros machine = new Soros(outputs);
+        try {
+            machine.reserve(InstructionReader.verify(
+                    Superinstructions.expand(code)));
+            return outputs.result(machine.run(code), null);
+        }
+        catch (DendronException error) {
+            return outputs.result(machine.variables(), error);
+        }
+        catch (ArithmeticException divideByZero) {
+            return outputs.result(machine.variables(), new DendronException(
+                    Errors.Type.DIVIDE_BY_ZERO, null));
+        }
+    }
+
+    /**
+     * Collects what a program prints, passing each value on as it goes.
+     */
+    private static final class Outputs implements IntConsumer {
+        private final IntConsumer printer;
+        private int[] values = new int[16];
+        private int size = 0;
+
+        Outputs(IntConsumer printer) {
+            this.printer = printer;
+        }
+
+        @Override
+        public void accept(int value) {
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+            }
+            this.values[this.size++] = value;
+            this.printer.accept(value);
+        }
+
+        Result result(Map<String, Integer> symbols,
+                       DendronException error) {
+            return new Result(Arrays.copyOf(this.values, this.size),
+                               new HashMap<>(symbols), error);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package dendron;
+
+/**
+ * The error raised when a Dendron program cannot be parsed or run.
+ * It says which kind of error it was, and gives the offending token or
+ * variable name when there is one. The message is the same text the
+ * command-line tools print before they give up.
+ *
+ * @author RIT CS
+ */
+public class DendronException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Errors.Type type;
+    private final Object info;
+
+    /**
+     * @param type the kind of error
+     * @param info the token or variable involved, or null
+     */
+    public DendronException( Errors.Type type, Object info ) {
+        super( info == null ? type.message() : type.message() + ": " + info );
+        this.type = type;
+        this.info = info;
+    }
+
+    /**
+     * @return the kind of error
+     */
+    public Errors.Type getType() {
+        return this.type;
+    }
+
+    /**
+     * @return the token or variable involved, or null if there is none
+     */
+    public Object getInfo() {
+        return this.info;
+    }
+}
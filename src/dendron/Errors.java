@@ -1,6 +1,7 @@
 package dendron;
 
 import java.util.Map;
+import java.util.function.Predicate;
 
 /**
  * Share code for dealing with Dendron program errors:
@@ -10,6 +11,7 @@ import java.util.Map;
  *     <li>uninitialized variable in expression</li>
  *     <li>premature end of statement</li>
  *     <li>extra tokens at end of statement</li>
+ *     <li>machine code that would pop an empty stack</li>
  * </ul>
  *
  * @author RIT CS
@@ -27,28 +29,60 @@ public class Errors {
         PREMATURE_END( "premature end of statement" ), // no info needed
         ILLEGAL_VALUE( "illegal token value encountered in source" ),
                                                         // info=token
-        UNINITIALIZED( "uninitialized variable in expression" ); // info=var
+        UNINITIALIZED( "uninitialized variable in expression" ), // info=var
+        STACK_UNDERFLOW( "instruction would pop an empty stack" );
+                                                // info=instruction
 
         private final String message;
 
         Type( String message ) {
             this.message = message;
         }
+
+        /**
+         * @return the description of this kind of error
+         */
+        public String message() {
+            return this.message;
+        }
     }
 
     /**
-     * Report an error and stop the program. All output goes to standard error.
+     * Report an error, abandoning whatever was being parsed or run.
      *
-     * @param type The kind of error, printed first
-     * @param info if not null, an additional value to be printed after a colon
+     * @param type The kind of error
+     * @param info if not null, the token or variable involved
+     * @throws DendronException always
      */
     public static void report( Type type, Object info ) {
-        System.err.print( type.message );
-        if ( info != null ) {
-            System.err.println( ": " + info );
+        throw new DendronException( type, info );
+    }
+
+    /**
+     * Show a reported error and stop the program. This is what the
+     * command-line tools do with a {@link DendronException}.
+     * All output goes to standard error.
+     *
+     * @param error the error, whose type is printed first and whose
+     *              info, if any, is printed after a colon
+     */
+    public static void abort( DendronException error ) {
+        show( error );
+        System.exit( DENDRON_ABORT );
+    }
+
+    /**
+     * Show a reported error, in the same form as {@link #abort},
+     * but carry on.
+     *
+     * @param error the error
+     */
+    public static void show( DendronException error ) {
+        System.err.print( error.getType().message );
+        if ( error.getInfo() != null ) {
+            System.err.println( ": " + error.getInfo() );
         }
         System.err.println();
-        System.exit( DENDRON_ABORT );
     }
 
     /**
@@ -56,9 +90,35 @@ public class Errors {
      * @param table the program's symbol table
      */
     public static void dump( Map< String, Integer > table ) {
-        System.out.println( "Symbol Table Contents\n=====================\n" );
-        for ( String ident: table.keySet() ) {
-            System.out.printf( "%12s : %11d\n", ident, table.get( ident ) );
+        OutputSink out = OutputSink.standardOutput();
+        dump( table, out );
+        out.flush();
+    }
+
+    /**
+     * Write out the values of all the variables in the table, in the
+     * same form as {@link #dump(Map)}.
+     * @param table the program's symbol table
+     * @param out where to write them
+     */
+    public static void dump( Map< String, Integer > table, OutputSink out ) {
+        dump( table, out, ident -> true );
+    }
+
+    /**
+     * Write out the values of some of the variables in the table, in the
+     * same form as {@link #dump(Map)}.
+     * @param table the program's symbol table
+     * @param out where to write them
+     * @param shown which variables to write out
+     */
+    public static void dump( Map< String, Integer > table, OutputSink out,
+                             Predicate< String > shown ) {
+        out.println( "Symbol Table Contents\n=====================\n" );
+        for ( Map.Entry< String, Integer > entry: table.entrySet() ) {
+            String ident = entry.getKey();
+            if ( !shown.test( ident ) ) continue;
+            out.symbol( ident, entry.getValue() );
         }
     }
 }
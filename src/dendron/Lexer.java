@@ -0,0 +1,280 @@
+package dendron;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A cursor over the tokens of a Dendron program. Tokens are separated
+ * by white space and are classified by looking at their characters
+ * directly, so no regular expressions are run and no token list is
+ * ever shifted. The source can be a character stream, a byte channel
+ * (decoded as UTF-8), or an already-split list of token strings.
+ *
+ * Only one token is held at a time. Call {@link #advance()} to move
+ * to the next one, then ask for its {@link #kind()}, {@link #text()}
+ * or {@link #value()}.
+ *
+ * @author RIT CS
+ */
+public class Lexer {
+
+    /**
+     * The categories a Dendron token can fall into.
+     */
+    public enum Kind {
+        ASSIGN,     // :=
+        PRINT,      // #
+        NUMBER,     // -?[0-9]+
+        IDENT,      // a letter followed by anything
+        UNARY,      // _ %
+        BINARY,     // + - * /
+        ILLEGAL,    // anything else
+        END         // no more tokens
+    }
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader in;
+    private final Iterator< String > words;
+
+    private final char[] buffer;
+    private int bufPos = 0;
+    private int bufLen = 0;
+
+    private char[] word = new char[ 32 ];
+    private int wordLen = 0;
+
+    private Kind kind = null;
+    private String text = null;
+    private int value = 0;
+    private long position = -1;
+
+    /**
+     * Read tokens from a stream of characters.
+     * @param in the program source
+     */
+    public Lexer( Reader in ) {
+        this.in = in;
+        this.words = null;
+        this.buffer = new char[ BUFFER_SIZE ];
+    }
+
+    /**
+     * Read tokens from a stream of UTF-8 encoded bytes.
+     * @param in the program source
+     */
+    public Lexer( ReadableByteChannel in ) {
+        this( Channels.newReader( in, StandardCharsets.UTF_8 ) );
+    }
+
+    /**
+     * Walk through a list of tokens that has already been split up.
+     * The list is not modified.
+     * @param tokens the program's tokens, in order
+     */
+    public Lexer( List< String > tokens ) {
+        this.in = null;
+        this.words = tokens.iterator();
+        this.buffer = null;
+    }
+
+    /**
+     * Move to the next token in the source.
+     * @return the kind of the new current token ({@link Kind#END}
+     *         if the source has been used up)
+     */
+    public Kind advance() {
+        boolean found = this.words == null ? readWord() : nextWord();
+        if ( found ) {
+            ++this.position;
+            classify();
+        }
+        else {
+            this.kind = Kind.END;
+            this.text = null;
+        }
+        return this.kind;
+    }
+
+    /**
+     * @return the kind of the current token
+     */
+    public Kind kind() {
+        return this.kind;
+    }
+
+    /**
+     * Get the current token as a string. Operator and statement
+     * tokens always come back as the same (interned) string instance.
+     * @return the current token, or null at the end of the source
+     */
+    public String text() {
+        if ( this.text == null && this.kind != Kind.END ) {
+            this.text = new String( this.word, 0, this.wordLen );
+        }
+        return this.text;
+    }
+
+    /**
+     * @return the value of the current token if it is a {@link Kind#NUMBER}
+     */
+    public int value() {
+        return this.value;
+    }
+
+    /**
+     * @return how many tokens came before the current one
+     */
+    public long position() {
+        return this.position;
+    }
+
+    /**
+     * Take the next string from the token list and copy it into
+     * the word buffer.
+     * @return false if the list has run out
+     */
+    private boolean nextWord() {
+        if ( !this.words.hasNext() ) {
+            return false;
+        }
+        String token = this.words.next();
+        this.wordLen = 0;
+        for ( int i = 0; i < token.length(); ++i ) {
+            append( token.charAt( i ) );
+        }
+        return true;
+    }
+
+    /**
+     * Skip white space in the character source, then gather up
+     * characters until the next white space or the end of the source.
+     * @return false if only white space was left
+     */
+    private boolean readWord() {
+        int c = read();
+        while ( c >= 0 && Character.isWhitespace( c ) ) {
+            c = read();
+        }
+        if ( c < 0 ) {
+            return false;
+        }
+        this.wordLen = 0;
+        while ( c >= 0 && !Character.isWhitespace( c ) ) {
+            append( (char)c );
+            c = read();
+        }
+        return true;
+    }
+
+    private int read() {
+        if ( this.bufPos == this.bufLen ) {
+            try {
+                this.bufLen = this.in.read( this.buffer );
+            }
+            catch( IOException ioe ) {
+                throw new UncheckedIOException( ioe );
+            }
+            this.bufPos = 0;
+            if ( this.bufLen <= 0 ) {
+                this.bufLen = 0;
+                return -1;
+            }
+        }
+        return this.buffer[ this.bufPos++ ];
+    }
+
+    private void append( char c ) {
+        if ( this.wordLen == this.word.length ) {
+            char[] bigger = new char[ this.word.length * 2 ];
+            System.arraycopy( this.word, 0, bigger, 0, this.wordLen );
+            this.word = bigger;
+        }
+        this.word[ this.wordLen++ ] = c;
+    }
+
+    /**
+     * Decide what kind of token is in the word buffer. This follows
+     * the same rules the parser has always used: an optional minus
+     * sign and digits is a number, a leading letter is an identifier,
+     * and the operators must match exactly.
+     */
+    private void classify() {
+        this.text = null;
+        if ( this.wordLen == 0 ) {
+            this.text = "";
+            this.kind = Kind.ILLEGAL;
+            return;
+        }
+        char first = this.word[ 0 ];
+        if ( isLetter( first ) ) {
+            this.kind = Kind.IDENT;
+        }
+        else if ( isDigit( first ) || ( first == '-' && this.wordLen > 1 ) ) {
+            this.kind = classifyNumber();
+        }
+        else if ( this.wordLen == 1 ) {
+            this.kind = classifySymbol( first );
+        }
+        else if ( this.wordLen == 2 && first == ':' && this.word[ 1 ] == '=' ) {
+            this.text = ParseTree.ASSIGN;
+            this.kind = Kind.ASSIGN;
+        }
+        else {
+            this.kind = Kind.ILLEGAL;
+        }
+    }
+
+    /**
+     * Accumulate the digits of a number token. Values that do not
+     * fit in an int are illegal, as they were for Integer.parseInt.
+     * @return {@link Kind#NUMBER} or {@link Kind#ILLEGAL}
+     */
+    private Kind classifyNumber() {
+        boolean negative = this.word[ 0 ] == '-';
+        // Accumulate negatively so that Integer.MIN_VALUE fits.
+        long total = 0;
+        for ( int i = negative ? 1 : 0; i < this.wordLen; ++i ) {
+            char c = this.word[ i ];
+            if ( !isDigit( c ) ) {
+                return Kind.ILLEGAL;
+            }
+            total = total * 10 - ( c - '0' );
+            if ( total < Integer.MIN_VALUE ) {
+                return Kind.ILLEGAL;
+            }
+        }
+        if ( !negative && total == Integer.MIN_VALUE ) {
+            return Kind.ILLEGAL;
+        }
+        this.value = (int)( negative ? total : -total );
+        return Kind.NUMBER;
+    }
+
+    private Kind classifySymbol( char c ) {
+        switch ( c ) {
+            case '#' -> { this.text = ParseTree.PRINT; return Kind.PRINT; }
+            case '_' -> { this.text = "_"; return Kind.UNARY; }
+            case '%' -> { this.text = "%"; return Kind.UNARY; }
+            case '+' -> { this.text = "+"; return Kind.BINARY; }
+            case '-' -> { this.text = "-"; return Kind.BINARY; }
+            case '*' -> { this.text = "*"; return Kind.BINARY; }
+            case '/' -> { this.text = "/"; return Kind.BINARY; }
+            default -> { return Kind.ILLEGAL; }
+        }
+    }
+
+    private static boolean isDigit( char c ) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter( char c ) {
+        return ( c >= 'a' && c <= 'z' ) || ( c >= 'A' && c <= 'Z' );
+    }
+}
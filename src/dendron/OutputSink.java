@@ -0,0 +1,253 @@
+package dendron;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.function.IntConsumer;
+
+/**
+ * Where Dendron's console output goes: the values printed by a program,
+ * the messages around a run, and symbol table dumps. Numbers are turned
+ * into digits directly in a byte buffer that is used over and over, and
+ * the buffer is only written out when it fills up or is flushed. So a
+ * program that prints a lot makes no strings and takes no locks while
+ * it prints.
+ * <p>
+ * The bytes are exactly what the same calls on {@link System#out} would
+ * produce, assuming text is encoded in the platform's default charset.
+ * Nothing appears until {@link #flush()} is called, so flush before
+ * writing to the same place some other way.
+ *
+ * @author RIT CS
+ */
+public final class OutputSink implements IntConsumer, Flushable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The longest int, "-2147483648" */
+    private static final int MAX_DIGITS = 11;
+
+    private static final byte[] PRINT_PREFIX = ascii("=== ");
+    private static final byte[] LINE_SEPARATOR =
+            ascii(System.lineSeparator());
+
+    private final WritableByteChannel channel;
+    private final Flushable downstream;
+    private final Charset charset = Charset.defaultCharset();
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer wrapper = ByteBuffer.wrap(this.buffer);
+    private int size = 0;
+
+    /**
+     * Create a sink that writes to a channel.
+     * @param channel where the output goes
+     */
+    public OutputSink(WritableByteChannel channel) {
+        this.channel = channel;
+        this.downstream = null;
+    }
+
+    /**
+     * Create a sink that writes to a stream, which is
+     * also flushed whenever the sink is.
+     * @param out where the output goes
+     */
+    public OutputSink(OutputStream out) {
+        this.channel = Channels.newChannel(out);
+        this.downstream = out;
+    }
+
+    /**
+     * @return a new sink that writes to whatever {@link System#out}
+     *         is right now
+     */
+    public static OutputSink standardOutput() {
+        return new OutputSink(System.out);
+    }
+
+    private static byte[] ascii(String text) {
+        byte[] bytes = new byte[text.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) text.charAt(i);
+        }
+        return bytes;
+    }
+
+    /**
+     * Output a value for a print statement, as a line starting with
+     * {@link dendron.treenodes.Print#PRINT_PREFIX}.
+     * @param value the value printed
+     */
+    @Override
+    public void accept(int value) {
+        room(PRINT_PREFIX.length + MAX_DIGITS + LINE_SEPARATOR.length);
+        put(PRINT_PREFIX);
+        putInt(value);
+        put(LINE_SEPARATOR);
+    }
+
+    /**
+     * Output some text.
+     * @param text what to write
+     */
+    public void print(String text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                // Let the charset deal with anything that is not ASCII.
+                put(text.substring(i).getBytes(this.charset));
+                return;
+            }
+            if (this.size == BUFFER_SIZE) {
+                writeBuffer();
+            }
+            this.buffer[this.size++] = (byte) c;
+        }
+    }
+
+    /**
+     * Output a number.
+     * @param value what to write
+     */
+    public void print(int value) {
+        room(MAX_DIGITS);
+        putInt(value);
+    }
+
+    /**
+     * Output some text and end the line.
+     * @param text what to write
+     */
+    public void println(String text) {
+        print(text);
+        println();
+    }
+
+    /**
+     * End the line.
+     */
+    public void println() {
+        room(LINE_SEPARATOR.length);
+        put(LINE_SEPARATOR);
+    }
+
+    /**
+     * Output one line of a symbol table dump. It looks just like
+     * <code>printf("%12s : %11d\n", ident, value)</code>.
+     * @param ident the variable's name
+     * @param value the variable's value
+     */
+    public void symbol(String ident, int value) {
+        spaces(12 - ident.length());
+        print(ident);
+        room(3 + MAX_DIGITS + 1);
+        this.buffer[this.size++] = ' ';
+        this.buffer[this.size++] = ':';
+        this.buffer[this.size++] = ' ';
+        spaces(MAX_DIGITS - digits(value));
+        putInt(value);
+        this.buffer[this.size++] = '\n';
+    }
+
+    /**
+     * Write out everything that has been buffered.
+     * @throws UncheckedIOException if it cannot be written
+     */
+    @Override
+    public void flush() {
+        writeBuffer();
+        if (this.downstream != null) {
+            try {
+                this.downstream.flush();
+            }
+            catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+    }
+
+    /**
+     * Make sure the buffer has space for some more bytes.
+     */
+    private void room(int bytes) {
+        if (this.size + bytes > BUFFER_SIZE) {
+            writeBuffer();
+        }
+    }
+
+    private void writeBuffer() {
+        this.wrapper.limit(this.size).position(0);
+        try {
+            while (this.wrapper.hasRemaining()) {
+                this.channel.write(this.wrapper);
+            }
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        this.size = 0;
+    }
+
+    private void put(byte[] bytes) {
+        for (int done = 0; done < bytes.length; ) {
+            if (this.size == BUFFER_SIZE) {
+                writeBuffer();
+            }
+            int n = Math.min(bytes.length - done, BUFFER_SIZE - this.size);
+            System.arraycopy(bytes, done, this.buffer, this.size, n);
+            this.size += n;
+            done += n;
+        }
+    }
+
+    private void spaces(int count) {
+        for (int i = 0; i < count; i++) {
+            if (this.size == BUFFER_SIZE) {
+                writeBuffer();
+            }
+            this.buffer[this.size++] = ' ';
+        }
+    }
+
+    /**
+     * @return how many characters value takes up, with its sign
+     */
+    private static int digits(int value) {
+        long n = value;
+        int count = 1;
+        if (n < 0) {
+            n = -n;
+            count++;
+        }
+        while (n >= 10) {
+            n /= 10;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Write a number's digits, last digit first, into space that
+     * the caller has already made.
+     */
+    private void putInt(int value) {
+        int end = this.size + digits(value);
+        long n = value;
+        if (n < 0) {
+            this.buffer[this.size] = '-';
+            n = -n;
+        }
+        int at = end;
+        do {
+            this.buffer[--at] = (byte) ('0' + n % 10);
+            n /= 10;
+        } while (n > 0);
+        this.size = end;
+    }
+}
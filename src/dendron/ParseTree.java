@@ -1,12 +1,32 @@
 package dendron;
 
+import dendron.jit.ClosureCompiler;
+import dendron.jit.CompiledProgram;
+import dendron.jit.JitCompiler;
+import dendron.machine.ProgramBuilder;
+import dendron.machine.Soros;
+import dendron.machine.SorosImage;
+import dendron.machine.Superinstructions;
+import dendron.optimize.ConstantFolder;
+import dendron.optimize.DagCompiler;
+import dendron.optimize.DeadStoreEliminator;
+import dendron.optimize.Specializer;
+import dendron.parallel.ParallelExecutor;
+import dendron.parallel.ParallelParser;
+import dendron.reactive.ReactiveProgram;
 import dendron.treenodes.*;
 
-import javax.swing.*;
+import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.HashMap;
+import java.io.Reader;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
 
 /**
  * Operations that are done on a Dendron code parse tree.
@@ -18,86 +38,189 @@ public class ParseTree {
     static String ASSIGN = ":=";
     static String PRINT = "#";
     private Program program = new Program();
-    private List<String> tokens;
+    private Lexer tokens;
 
     /**
      * Parse the entire list of program tokens. The program is a
      * sequence of actions (statements), each of which modifies something
      * in the program's set of variables. The resulting parse tree is
      * stored internally.
-     * @param tokens the token list (Strings). This list may be destroyed
-     *                by this constructor.
+     * @param tokens the token list (Strings). This list is not modified.
      */
     public ParseTree( List< String > tokens ) {
+        this( new Lexer( tokens ) );
+    }
+
+    /**
+     * Parse a whole program read from a character stream, without
+     * first splitting it into a list of tokens.
+     * @param source the text of the program
+     */
+    public ParseTree( Reader source ) {
+        this( new Lexer( source ) );
+    }
+
+    /**
+     * Parse a whole program read from a channel of UTF-8 encoded bytes.
+     * @param source the text of the program
+     */
+    public ParseTree( ReadableByteChannel source ) {
+        this( new Lexer( source ) );
+    }
+
+    /**
+     * Parse every token the lexer has left to give.
+     * @param tokens the cursor over the program's tokens
+     */
+    public ParseTree( Lexer tokens ) {
         this.tokens = tokens;
-        while (!this.tokens.isEmpty()) {
+        this.tokens.advance();
+        while (this.tokens.kind() != Lexer.Kind.END) {
             this.program.addAction(parseAction());
         }
     }
 
     /**
-     * Parses the next token and creates an ActionNode for that token.
+     * Parse a whole program, splitting it into pieces at statement
+     * boundaries and parsing the pieces in parallel. The tree and any
+     * error are the same as those of {@link #ParseTree(Reader)}.
+     * @param source the text of the program
+     * @return the parse tree
+     * @see ParallelParser
+     */
+    public static ParseTree parseParallel( String source ) {
+        return new ParseTree(ParallelParser.parse(
+                source, ParseTree::parseAll, ForkJoinPool.commonPool()));
+    }
+
+    /**
+     * Parse a whole program from a file of UTF-8 encoded text,
+     * in parallel, as {@link #parseParallel(String)} does.
+     * @param file the program source
+     * @return the parse tree
+     * @throws IOException if the file cannot be read
+     */
+    public static ParseTree parseParallel( Path file ) throws IOException {
+        return parseParallel(new String(Files.readAllBytes(file),
+                                        StandardCharsets.UTF_8));
+    }
+
+    private ParseTree( Program program ) {
+        this.program = program;
+    }
+
+    private static Program parseAll( Lexer tokens ) {
+        return new ParseTree(tokens).program;
+    }
+
+    /**
+     * Get the root of the parse tree, for evaluators that live outside
+     * this package, such as the batch evaluator.
+     * @return the root of the parse tree
+     */
+    public Program program() {
+        return this.program;
+    }
+
+    /**
+     * Parses the current token and creates an ActionNode for that token.
      * Then calls parseExpression to parse the remaining tokens for the action.
-     * @return ActionNode if next token in tokens is a valid action.
+     * @return ActionNode if current token is a valid action.
      */
     private ActionNode parseAction() {
-        if (this.tokens.isEmpty()) {
-            Errors.report(Errors.Type.PREMATURE_END, null);
-        }
-        if (this.tokens.get(0).equals(ASSIGN)) {
-            this.tokens.remove(0);
-            if (this.tokens.isEmpty()) {
-                Errors.report(Errors.Type.PREMATURE_END, null);
+        switch (this.tokens.kind()) {
+            case END -> Errors.report(Errors.Type.PREMATURE_END, null);
+            case ASSIGN -> {
+                if (this.tokens.advance() == Lexer.Kind.END) {
+                    Errors.report(Errors.Type.PREMATURE_END, null);
+                }
+                String ident = this.tokens.text();
+                this.tokens.advance();
+                return new Assignment(ident, parseExpression());
             }
-            String ident = this.tokens.remove(0);
-            return new Assignment(ident, parseExpression());
-        }
-        else if (this.tokens.get(0).equals(PRINT)) {
-            this.tokens.remove(0);
-            if (this.tokens.isEmpty()) {
-                Errors.report(Errors.Type.PREMATURE_END, null);
+            case PRINT -> {
+                if (this.tokens.advance() == Lexer.Kind.END) {
+                    Errors.report(Errors.Type.PREMATURE_END, null);
+                }
+                return new Print(parseExpression());
             }
-            return new Print(parseExpression());
-        }
-        else {
-            Errors.report(Errors.Type.ILLEGAL_VALUE, this.tokens.get(0));
+            default -> Errors.report(Errors.Type.ILLEGAL_VALUE,
+                                     this.tokens.text());
         }
         return null;
     }
 
     /**
-     * Parses the remaining tokens that are part of the same action.
-     * Creates ExpressionNodes for each token.
+     * Parses the remaining tokens that are part of the same action,
+     * starting with the current token. Creates ExpressionNodes for
+     * each token.
      * @return ExpressionNode that contains the entire expression
      */
     private ExpressionNode parseExpression() {
         ExpressionNode result = null;
-        if (this.tokens.isEmpty()) {
-            Errors.report(Errors.Type.ILLEGAL_VALUE, this.tokens);
-        }
-        else {
-            String token = this.tokens.remove(0);
-            if (token.matches("-?\\d+")) {
-                result = new Constant(Integer.parseInt(token));
+        switch (this.tokens.kind()) {
+            case END -> Errors.report(Errors.Type.PREMATURE_END, null);
+            case NUMBER -> {
+                result = new Constant(this.tokens.value());
+                this.tokens.advance();
             }
-            else if (token.matches("^[a-zA-Z].*")) {
-                result = new Variable(token);
+            case IDENT -> {
+                result = new Variable(this.tokens.text());
+                this.tokens.advance();
             }
-            else if (token.equals("_") || token.equals("%")) {
-                result = new UnaryOperation(token, parseExpression());
+            case UNARY -> {
+                String operator = this.tokens.text();
+                this.tokens.advance();
+                result = new UnaryOperation(operator, parseExpression());
             }
-            else if (token.equals("+") || token.equals("-") ||
-                     token.equals("*") || token.equals("/")) {
-                result = new BinaryOperation(token, parseExpression(),
-                                                    parseExpression());
-            }
-            else {
-                Errors.report(Errors.Type.ILLEGAL_VALUE, token);
+            case BINARY -> {
+                String operator = this.tokens.text();
+                this.tokens.advance();
+                ExpressionNode left = parseExpression();
+                result = new BinaryOperation(operator, left,
+                                                       parseExpression());
             }
+            default -> Errors.report(Errors.Type.ILLEGAL_VALUE,
+                                     this.tokens.text());
         }
         return result;
     }
 
+    /**
+     * Simplify the program's expressions by folding constants and
+     * removing identity operations. Both {@link #interpret()} and
+     * {@link #compileTo(PrintWriter)} will then work on the smaller tree.
+     * @see ConstantFolder
+     */
+    public void optimize() {
+        this.program = ConstantFolder.fold(this.program);
+    }
+
+    /**
+     * Replace the program's expression nodes with classes specialized
+     * for their operator and operands, so that {@link #interpret()}
+     * no longer compares operators while it runs.
+     * @see Specializer
+     */
+    public void specialize() {
+        this.program = Specializer.specialize(this.program);
+    }
+
+    /**
+     * Remove assignments whose values are never read.
+     * @param keepFinalValues true to keep the last assignment to every
+     *                        variable, so that the final symbol table
+     *                        is unchanged
+     * @return how many statements were removed
+     * @see DeadStoreEliminator
+     */
+    public int eliminateDeadStores(boolean keepFinalValues) {
+        DeadStoreEliminator eliminator =
+                new DeadStoreEliminator(keepFinalValues);
+        this.program = eliminator.eliminate(this.program);
+        return eliminator.removed();
+    }
+
     /**
      * Print the program the tree represents in a more typical
      * infix style, and with one statement per line.
@@ -110,22 +233,208 @@ public class ParseTree {
     }
 
     /**
-     * Run the program represented by the tree directly
-     * @see ActionNode#execute(Map)
+     * Run the program represented by the tree directly.
+     * Variables are first resolved to slots in a {@link Frame}, so
+     * the interpreter never hashes a name while it runs.
+     * @see ActionNode#execute(Frame)
      */
     public void interpret() {
-        System.out.println("Interpreting the parse tree...");
-        Map <String, Integer> symTab = new HashMap<String, Integer>();
-        this.program.execute(symTab);
-        System.out.println("Interpretation complete.\n");
-
-        System.out.println("Symbol Table Contents");
-        System.out.println("========================");
-        for (String key: symTab.keySet()) {
-            System.out.println(key + " :   " + symTab.get(key));
+        interpret(OutputSink.standardOutput());
+    }
+
+    /**
+     * Run the program represented by the tree directly, sending
+     * everything {@link #interpret()} shows to a sink instead.
+     * @param out where the output goes; it is flushed at the end,
+     *            even if the program fails
+     */
+    public void interpret( OutputSink out ) {
+        try {
+            out.println("Interpreting the parse tree...");
+            Map<String, Integer> symTab = execute(out);
+            out.println("Interpretation complete.\n");
+
+            printSymbolTable(symTab, out);
+        }
+        finally {
+            out.flush();
+        }
+    }
+
+    /**
+     * Run the program represented by the tree, running statements that
+     * do not depend on each other in parallel. The output is the same
+     * as {@link #interpret()}'s. The run works on its own copy of the
+     * tree's expressions, so it may overlap other runs of this tree.
+     * @see ParallelExecutor
+     */
+    public void interpretParallel() {
+        OutputSink out = OutputSink.standardOutput();
+        try {
+            out.println("Interpreting the parse tree...");
+            Map<String, Integer> symTab = ParallelExecutor.execute(
+                    this.program, out, ForkJoinPool.commonPool());
+            out.println("Interpretation complete.\n");
+
+            printSymbolTable(symTab, out);
+        }
+        finally {
+            out.flush();
+        }
+    }
+
+    /**
+     * Run the program represented by the tree quietly: nothing is shown,
+     * and the values printed by the program go to the given printer.
+     * Only one thread at a time may run a given tree.
+     * @param printer receives the value of each print statement, in order
+     * @return the final value of every variable the program assigns,
+     *         added in the order the variables were first assigned
+     * @throws DendronException if the program reports an error
+     */
+    public Map<String, Integer> execute( IntConsumer printer ) {
+        return execute(new Frame(printer));
+    }
+
+    /**
+     * Run the program represented by the tree quietly, as
+     * {@link #execute(IntConsumer)} does, but running statements that
+     * do not depend on each other in parallel. Unlike that method, this
+     * one works on its own copy of the tree's expressions, so it may
+     * overlap other runs of this tree.
+     * @param printer receives the value of each print statement, in order
+     * @return the final value of every variable the program assigns
+     * @throws DendronException the error a sequential run
+     *         would have reported
+     * @see ParallelExecutor
+     */
+    public Map<String, Integer> executeParallel( IntConsumer printer ) {
+        return ParallelExecutor.execute(this.program, printer,
+                                        ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Run the program represented by the tree quietly, in a frame
+     * supplied by the caller. If the program fails, the frame still
+     * holds the variables assigned before the error.
+     * @param frame a new frame, which also decides where printing goes
+     * @return the final value of every variable the program assigns,
+     *         added in the order the variables were first assigned
+     * @throws DendronException if the program reports an error
+     */
+    public Map<String, Integer> execute( Frame frame ) {
+        this.program.resolve(frame);
+        this.program.execute(frame);
+        return frame.toMap();
+    }
+
+    /**
+     * Run the program represented by the tree by compiling it to JVM
+     * bytecode first. The output is the same as {@link #interpret()}'s.
+     * @see JitCompiler
+     */
+    public void interpretCompiled() {
+        runCompiled(JitCompiler.compile(this.program));
+    }
+
+    /**
+     * Run the program represented by the tree by first turning each node
+     * into a closure. This costs far less up front than
+     * {@link #interpretCompiled()}, and the output is the same as
+     * {@link #interpret()}'s.
+     * @see ClosureCompiler
+     */
+    public void interpretClosures() {
+        runCompiled(ClosureCompiler.compile(this.program));
+    }
+
+    private static void runCompiled( CompiledProgram compiled ) {
+        OutputSink out = OutputSink.standardOutput();
+        try {
+            out.println("Interpreting the parse tree...");
+            Map<String, Integer> symTab = compiled.run(out);
+            out.println("Interpretation complete.\n");
+
+            printSymbolTable(symTab, out);
+        }
+        finally {
+            out.flush();
+        }
+    }
+
+    private static void printSymbolTable( Map<String, Integer> symTab,
+                                          OutputSink out ) {
+        out.println("Symbol Table Contents");
+        out.println("========================");
+        for (Map.Entry<String, Integer> entry: symTab.entrySet()) {
+            out.print(entry.getKey());
+            out.print(" :   ");
+            out.print(entry.getValue());
+            out.println();
         }
     }
 
+    /**
+     * Keep the program represented by the tree live, so that its inputs
+     * can be changed and only what depends on them is run again.
+     * @return the live program, already run once with no inputs set
+     * @see ReactiveProgram
+     */
+    public ReactiveProgram reactive() {
+        return new ReactiveProgram(this.program);
+    }
+
+    /**
+     * Build the machine instructions for the program represented by
+     * the tree, ready to run. Unlike {@link #compileTo(PrintWriter)},
+     * no assembly language text is written or read back in.
+     *
+     * @return the Soros instruction list
+     * @see ProgramBuilder
+     */
+    public List<Soros.Instruction> compile() {
+        ProgramBuilder code = new ProgramBuilder();
+        this.program.compile(code);
+        return code.build();
+    }
+
+    /**
+     * Build the machine instructions for the program represented by
+     * the tree, ready to run, optionally computing repeated
+     * subexpressions only once.
+     *
+     * @param shareSubexpressions true to compile the program as a DAG
+     * @return the Soros instruction list
+     * @see DagCompiler
+     */
+    public List<Soros.Instruction> compile( boolean shareSubexpressions ) {
+        if (!shareSubexpressions) {
+            return compile();
+        }
+        ProgramBuilder code = new ProgramBuilder();
+        DagCompiler.compile(this.program, code);
+        return code.build();
+    }
+
+    /**
+     * Compile the program represented by the tree and run it on a new
+     * Soros machine, showing what {@link Soros#execute(List)} shows.
+     */
+    public void compileAndRun() {
+        new Soros().execute(compile());
+    }
+
+    /**
+     * Compile the program represented by the tree and run it quietly
+     * on a new Soros machine.
+     * @param printer receives each value the program prints
+     * @return the final value of every variable the program assigns
+     * @throws DendronException if the program reports an error
+     */
+    public Map<String, Integer> compileAndRun( IntConsumer printer ) {
+        return new Soros(printer).run(compile());
+    }
+
     /**
      * Build the list of machine instructions for
      * the program represented by the tree.
@@ -135,4 +444,34 @@ public class ParseTree {
     public void compileTo( PrintWriter out ) {
         this.program.compile(out);
     }
+
+    /**
+     * Build the list of machine instructions for
+     * the program represented by the tree, optionally computing
+     * repeated subexpressions only once.
+     *
+     * @param out where to print the Soros instruction list
+     * @param shareSubexpressions true to compile the program as a DAG
+     * @see DagCompiler
+     */
+    public void compileTo( PrintWriter out, boolean shareSubexpressions ) {
+        if (shareSubexpressions) {
+            DagCompiler.compile(this.program, out);
+        }
+        else {
+            this.program.compile(out);
+        }
+    }
+
+    /**
+     * Build the machine instructions for the program represented
+     * by the tree and save them as a binary Soros image.
+     *
+     * @param imageFile where to write the image
+     * @throws IOException if the image cannot be written
+     * @see SorosImage
+     */
+    public void compileTo( Path imageFile ) throws IOException {
+        SorosImage.write(Superinstructions.expand(compile()), imageFile);
+    }
 }
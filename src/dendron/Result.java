@@ -0,0 +1,64 @@
+package dendron;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * What happened when a Dendron program was run through {@link Dendron}:
+ * the values it printed, the final values of its variables, and the
+ * error that stopped it, if one did. A program that fails part way still
+ * has the output it printed and the variables it assigned before failing.
+ *
+ * @author RIT CS
+ */
+public final class Result {
+
+    private final int[] outputs;
+    private final Map<String, Integer> symbols;
+    private final DendronException error;
+
+    Result(int[] outputs, Map<String, Integer> symbols,
+           DendronException error) {
+        this.outputs = outputs;
+        this.symbols = Collections.unmodifiableMap(symbols);
+        this.error = error;
+    }
+
+    /**
+     * @return the values printed by the program, in order
+     */
+    public int[] outputs() {
+        return this.outputs.clone();
+    }
+
+    /**
+     * @return the final value of every variable the program assigned
+     */
+    public Map<String, Integer> symbols() {
+        return this.symbols;
+    }
+
+    /**
+     * @return the error that stopped the program, if there was one
+     */
+    public Optional<DendronException> error() {
+        return Optional.ofNullable(this.error);
+    }
+
+    /**
+     * @return true if the program ran to the end
+     */
+    public boolean succeeded() {
+        return this.error == null;
+    }
+
+    @Override
+    public String toString() {
+        return "Result{outputs=" + Arrays.toString(this.outputs) +
+               ", symbols=" + this.symbols +
+               (this.error == null ? "" : ", error=" + this.error.getMessage()) +
+               "}";
+    }
+}
@@ -0,0 +1,206 @@
+package dendron;
+
+import dendron.machine.ProgramBuilder;
+import dendron.machine.Soros;
+import dendron.treenodes.Frame;
+import dendron.treenodes.Program;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * An interactive Dendron session. Source text is fed in a piece at a
+ * time, usually a line, and each statement is parsed and run as soon as
+ * its last token arrives. A statement may be split across pieces.
+ * <p>
+ * The variables live in one {@link Frame} for the whole session, so
+ * later statements see what earlier ones assigned. Each statement is
+ * parsed, resolved and run on its own, so the time a statement takes
+ * does not grow with the number of statements before it.
+ * <p>
+ * A statement that fails to parse or run is dropped, along with the
+ * rest of the piece it was in, and the session carries on. Statements
+ * that ran before it keep their effects.
+ *
+ * @author RIT CS
+ */
+public class Session {
+
+    private final Frame frame;
+    private final ProgramBuilder code;
+
+    /** The tokens of the statement being read */
+    private final List<String> statement = new ArrayList<>();
+
+    /** Whether the next token is the name after := */
+    private boolean wantIdent = false;
+
+    /** How many more expressions the statement needs */
+    private int wanted = 0;
+
+    private int statements = 0;
+
+    /**
+     * Start a session whose program prints to standard output.
+     */
+    public Session() {
+        this(new Frame(), false);
+    }
+
+    /**
+     * Start a session.
+     * @param printer receives the value of each print statement
+     * @param compile true to also compile every statement that runs,
+     *                so that {@link #code()} can give the whole session
+     *                as a Soros program
+     */
+    public Session(IntConsumer printer, boolean compile) {
+        this(new Frame(printer), compile);
+    }
+
+    private Session(Frame frame, boolean compile) {
+        this.frame = frame;
+        this.code = compile ? new ProgramBuilder() : null;
+    }
+
+    /**
+     * Read some more source text, running every statement it completes.
+     * Tokens after the last complete statement are kept until the
+     * rest of their statement arrives.
+     * @param text the next piece of the program
+     * @return how many statements ran
+     * @throws DendronException if a statement is not well formed or
+     *         fails while running; the statement and the rest of the
+     *         text are dropped
+     */
+    public int feed(String text) {
+        Lexer tokens = new Lexer(new StringReader(text));
+        int ran = 0;
+        try {
+            while (tokens.advance() != Lexer.Kind.END) {
+                if (take(tokens)) {
+                    run();
+                    ran++;
+                }
+            }
+        }
+        catch (DendronException error) {
+            clear();
+            throw error;
+        }
+        return ran;
+    }
+
+    /**
+     * Add a token to the statement being read.
+     * @return true if the token completes the statement
+     */
+    private boolean take(Lexer tokens) {
+        Lexer.Kind kind = tokens.kind();
+        this.statement.add(kind == Lexer.Kind.NUMBER ?
+                Integer.toString(tokens.value()) : tokens.text());
+        if (this.statement.size() == 1) {
+            switch (kind) {
+                case ASSIGN -> {
+                    this.wantIdent = true;
+                    this.wanted = 1;
+                    return false;
+                }
+                case PRINT -> {
+                    this.wanted = 1;
+                    return false;
+                }
+                // Anything else is an error the parser will report.
+                default -> {
+                    return true;
+                }
+            }
+        }
+        if (this.wantIdent) {
+            this.wantIdent = false;
+            return false;
+        }
+        switch (kind) {
+            case ASSIGN, PRINT -> Errors.report(Errors.Type.ILLEGAL_VALUE,
+                                                tokens.text());
+            case UNARY -> {
+                return false;
+            }
+            case BINARY -> this.wanted++;
+            default -> this.wanted--;
+        }
+        return this.wanted == 0;
+    }
+
+    /**
+     * Parse and run the statement that has just been completed.
+     */
+    private void run() {
+        Program program = new ParseTree(this.statement).program();
+        clear();
+        program.resolve(this.frame);
+        program.execute(this.frame);
+        if (this.code != null) {
+            program.compile(this.code);
+        }
+        this.statements++;
+    }
+
+    private void clear() {
+        this.statement.clear();
+        this.wantIdent = false;
+        this.wanted = 0;
+    }
+
+    /**
+     * @return true if part of a statement has been read
+     *         and is waiting for the rest
+     */
+    public boolean isPending() {
+        return !this.statement.isEmpty();
+    }
+
+    /**
+     * End the input.
+     * @throws DendronException if a statement was left unfinished
+     *         (it is dropped)
+     */
+    public void finish() {
+        if (isPending()) {
+            clear();
+            Errors.report(Errors.Type.PREMATURE_END, null);
+        }
+    }
+
+    /**
+     * @return how many statements have run
+     */
+    public int statements() {
+        return this.statements;
+    }
+
+    /**
+     * @return every variable assigned so far, with its current value
+     */
+    public Map<String, Integer> variables() {
+        return this.frame.toMap();
+    }
+
+    /**
+     * Get the Soros program for every statement that has run without
+     * error, in order. Running it on a new machine gives the same
+     * output and variables as the session so far.
+     * @return the instructions
+     * @throws IllegalStateException if the session was not started
+     *         with compiling turned on
+     */
+    public List<Soros.Instruction> code() {
+        if (this.code == null) {
+            throw new IllegalStateException("session is not compiling");
+        }
+        return this.code.build();
+    }
+}
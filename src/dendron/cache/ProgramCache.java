@@ -0,0 +1,332 @@
+package dendron.cache;
+
+import dendron.DendronException;
+import dendron.Lexer;
+import dendron.ParseTree;
+import dendron.machine.Soros;
+import dendron.machine.Superinstructions;
+import dendron.machine.SorosImage;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Keeps the compiled forms of programs that have been seen before, so
+ * that a program sent again only has to be split into tokens.
+ * <p>
+ * A program is known by the SHA-256 hash of its tokens, so programs that
+ * differ only in white space, or in how their numbers are written, share
+ * an entry. The cache holds as many entries as fit in a given number of
+ * bytes, throwing out the least recently used ones to make room. The
+ * sizes are estimates made from the number and length of the tokens.
+ * <p>
+ * If the cache is given a directory, the compiled code of every program
+ * is also saved there as a {@link SorosImage} named after its hash. A
+ * program that is not in memory but is on disk, from this run or an
+ * earlier one, is not parsed or compiled again. The directory
+ * is not limited in size and nothing is ever removed from it; clean it
+ * out from outside if it grows too big. Reading and writing it is best
+ * effort: an image that cannot be read or written is simply compiled
+ * again.
+ * <p>
+ * All the methods may be called from any number of threads.
+ *
+ * @author RIT CS
+ */
+public class ProgramCache {
+
+    /**
+     * Roughly how many bytes a token's machine instruction and its
+     * share of the entry take up, apart from its text
+     */
+    private static final int BYTES_PER_TOKEN = 96;
+
+    private static final String IMAGE_SUFFIX = ".soros";
+
+    /**
+     * How well the cache is doing
+     * @param hits lookups answered from memory
+     * @param misses lookups that had to parse the program
+     * @param diskHits misses whose compiled code was found on disk
+     * @param evictions entries thrown out to make room
+     * @param entries how many programs are in memory now
+     * @param bytes the estimated size of those programs
+     */
+    public record Stats(long hits, long misses, long diskHits,
+                        long evictions, int entries, long bytes) {}
+
+    private final long capacity;
+    private final Path directory;
+    private final LinkedHashMap<String, Entry> entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long diskHits = 0;
+    private long evictions = 0;
+
+    /**
+     * Create a cache kept only in memory.
+     * @param capacity the most bytes, roughly, that the cache may hold
+     */
+    public ProgramCache(long capacity) {
+        this.capacity = capacity;
+        this.directory = null;
+    }
+
+    /**
+     * Create a cache whose compiled code is also kept on disk.
+     * @param capacity the most bytes, roughly, that the cache may
+     *                 hold in memory
+     * @param directory where compiled code is saved (created if needed)
+     * @throws IOException if the directory cannot be created
+     */
+    public ProgramCache(long capacity, Path directory) throws IOException {
+        this.capacity = capacity;
+        this.directory = Files.createDirectories(directory);
+    }
+
+    /**
+     * Find a program in the cache, parsing and compiling it
+     * if it is not there.
+     * @param source the text of the program
+     * @return the program's cache entry
+     * @throws DendronException if the program is not well formed
+     *         (it is not cached)
+     */
+    public Entry get(Reader source) {
+        List<String> tokens = tokens(source);
+        String key = hash(tokens);
+        synchronized (this) {
+            Entry entry = this.entries.get(key);
+            if (entry != null) {
+                this.hits++;
+                return entry;
+            }
+            this.misses++;
+        }
+
+        // Parse and compile without holding the lock. If two threads
+        // miss on the same program, the second one's entry is dropped.
+        List<Soros.Instruction> code = load(key);
+        if (code == null) {
+            code = new ParseTree(tokens).compile();
+            save(key, code);
+        }
+        else {
+            synchronized (this) {
+                this.diskHits++;
+            }
+        }
+        Entry entry = new Entry(key, tokens, code);
+        synchronized (this) {
+            Entry raced = this.entries.putIfAbsent(key, entry);
+            if (raced != null) {
+                return raced;
+            }
+            this.bytes += entry.bytes;
+            evict();
+        }
+        return entry;
+    }
+
+    /**
+     * @return the counts of hits, misses and evictions so far,
+     *         and how full the cache is
+     */
+    public synchronized Stats stats() {
+        return new Stats(this.hits, this.misses, this.diskHits,
+                         this.evictions, this.entries.size(), this.bytes);
+    }
+
+    /**
+     * Throw out everything held in memory. Saved code is kept.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.bytes = 0;
+    }
+
+    /**
+     * Throw out the least recently used entries until the cache fits,
+     * always keeping the newest one.
+     */
+    private void evict() {
+        Iterator<Entry> eldest = this.entries.values().iterator();
+        while (this.bytes > this.capacity && this.entries.size() > 1) {
+            this.bytes -= eldest.next().bytes;
+            eldest.remove();
+            this.evictions++;
+        }
+    }
+
+    private synchronized void grow(Entry entry, long more) {
+        entry.bytes += more;
+        if (this.entries.get(entry.key) == entry) {
+            this.bytes += more;
+            evict();
+        }
+    }
+
+    /**
+     * Split a program into tokens, writing every number
+     * the same way.
+     */
+    private static List<String> tokens(Reader source) {
+        Lexer lexer = new Lexer(source);
+        List<String> tokens = new ArrayList<>();
+        while (lexer.advance() != Lexer.Kind.END) {
+            tokens.add(lexer.kind() == Lexer.Kind.NUMBER ?
+                    Integer.toString(lexer.value()) : lexer.text());
+        }
+        return tokens;
+    }
+
+    private static String hash(List<String> tokens) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to have SHA-256.
+            throw new IllegalStateException(e);
+        }
+        for (String token : tokens) {
+            digest.update(token.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) ' ');
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @return the saved code for a program, or null if there is none
+     *         or it cannot be read
+     */
+    private List<Soros.Instruction> load(String key) {
+        if (this.directory == null) {
+            return null;
+        }
+        Path image = this.directory.resolve(key + IMAGE_SUFFIX);
+        try {
+            return Files.exists(image) ? SorosImage.load(image) : null;
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Save the code for a program. It is written to a temporary file
+     * first, so that no other reader ever sees half an image. Saving is
+     * only an optimization: if it fails, the code is still in memory, so
+     * the failure is ignored and the temporary file is removed.
+     */
+    private void save(String key, List<Soros.Instruction> code) {
+        if (this.directory == null) {
+            return;
+        }
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(this.directory, key, ".tmp");
+            SorosImage.write(Superinstructions.expand(code), temp);
+            Files.move(temp, this.directory.resolve(key + IMAGE_SUFFIX),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                }
+                catch (IOException ignored) {
+                    // Nothing more can be done about it.
+                }
+            }
+        }
+    }
+
+    /**
+     * The cached forms of one program. The instruction lists never
+     * change and can be run by any number of threads at once, each on
+     * its own {@link Soros} machine. Parse trees can be changed and keep
+     * state while they run, so none is shared: each caller that asks
+     * for one gets a tree of its own.
+     */
+    public final class Entry {
+        private final String key;
+        private final List<String> tokens;
+        private final List<Soros.Instruction> code;
+        private List<Soros.Instruction> optimizedCode = null;
+        private long bytes;
+
+        private Entry(String key, List<String> tokens,
+                      List<Soros.Instruction> code) {
+            this.key = key;
+            this.tokens = tokens;
+            this.code = Collections.unmodifiableList(code);
+            this.bytes = (long) BYTES_PER_TOKEN * tokens.size();
+            for (String token : tokens) {
+                this.bytes += 2L * token.length();
+            }
+        }
+
+        /**
+         * @return the hex SHA-256 hash of the program's tokens
+         */
+        public String key() {
+            return this.key;
+        }
+
+        /**
+         * Parse the program's tokens into a new tree, which the caller
+         * may run, optimize or otherwise change as it likes.
+         * @return a parse tree that belongs to the caller alone
+         */
+        public ParseTree tree() {
+            return new ParseTree(this.tokens);
+        }
+
+        /**
+         * @return the program compiled for the Soros machine
+         */
+        public List<Soros.Instruction> code() {
+            return this.code;
+        }
+
+        /**
+         * Get the program compiled with its constants folded and its
+         * repeated subexpressions computed once. That is only done the
+         * first time it is asked for.
+         * @return the optimized instructions
+         * @see ParseTree#optimize()
+         * @see ParseTree#compile(boolean)
+         */
+        public List<Soros.Instruction> optimizedCode() {
+            synchronized (this) {
+                if (this.optimizedCode != null) {
+                    return this.optimizedCode;
+                }
+                // Work on a tree of its own, since optimizing
+                // changes the tree.
+                ParseTree tree = new ParseTree(this.tokens);
+                tree.optimize();
+                this.optimizedCode =
+                        Collections.unmodifiableList(tree.compile(true));
+            }
+            grow(this, (long) BYTES_PER_TOKEN / 2 * this.optimizedCode.size());
+            return this.optimizedCode;
+        }
+    }
+}
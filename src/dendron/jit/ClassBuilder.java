@@ -0,0 +1,207 @@
+package dendron.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough of a Java class file writer to hold the static methods the
+ * {@link JitCompiler} generates. The methods never branch, so no stack
+ * map frames are needed, and the class file version is fixed at Java 8.
+ *
+ * @author RIT CS
+ */
+final class ClassBuilder {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int MAJOR_VERSION = 52;
+    private static final int MAX_POOL_SIZE = 0xFFFF;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<List<Object>, Integer> poolIndex = new HashMap<>();
+    private int poolSize = 1;
+
+    private final List<byte[]> methods = new ArrayList<>();
+    private final int thisClass;
+    private final int superClass;
+    private final int codeAttribute;
+
+    /**
+     * Start a class that extends Object.
+     * @param internalName the class name, with '/' between package parts
+     */
+    ClassBuilder(String internalName) {
+        this.thisClass = classRef(internalName);
+        this.superClass = classRef("java/lang/Object");
+        this.codeAttribute = utf8("Code");
+    }
+
+    int utf8(String text) {
+        return entry(List.of(CONSTANT_UTF8, text), () -> {
+            this.pool.writeByte(CONSTANT_UTF8);
+            this.pool.writeUTF(text);
+        });
+    }
+
+    int integer(int value) {
+        return entry(List.of(CONSTANT_INTEGER, value), () -> {
+            this.pool.writeByte(CONSTANT_INTEGER);
+            this.pool.writeInt(value);
+        });
+    }
+
+    int string(String text) {
+        int index = utf8(text);
+        return entry(List.of(CONSTANT_STRING, index), () -> {
+            this.pool.writeByte(CONSTANT_STRING);
+            this.pool.writeShort(index);
+        });
+    }
+
+    int classRef(String internalName) {
+        int index = utf8(internalName);
+        return entry(List.of(CONSTANT_CLASS, index), () -> {
+            this.pool.writeByte(CONSTANT_CLASS);
+            this.pool.writeShort(index);
+        });
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_INTERFACE_METHODREF, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name,
+                          String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descIndex = utf8(descriptor);
+        int natIndex = entry(List.of(CONSTANT_NAME_AND_TYPE, nameIndex, descIndex),
+                () -> {
+                    this.pool.writeByte(CONSTANT_NAME_AND_TYPE);
+                    this.pool.writeShort(nameIndex);
+                    this.pool.writeShort(descIndex);
+                });
+        return entry(List.of(tag, ownerIndex, natIndex), () -> {
+            this.pool.writeByte(tag);
+            this.pool.writeShort(ownerIndex);
+            this.pool.writeShort(natIndex);
+        });
+    }
+
+    /**
+     * @return how many more constant pool entries can be added
+     */
+    int poolRoom() {
+        return MAX_POOL_SIZE - this.poolSize;
+    }
+
+    /**
+     * Add a method to the class.
+     * @param access the access flags
+     * @param name the method name
+     * @param descriptor the method's type descriptor
+     * @param maxStack the deepest the operand stack gets
+     * @param maxLocals how many local variable slots are used
+     * @param code the bytecode (which must not branch)
+     */
+    void addMethod(int access, String name, String descriptor,
+                   int maxStack, int maxLocals, byte[] code) {
+        if (code.length > 0xFFFF || maxLocals > 0xFFFF || maxStack > 0xFFFF) {
+            throw new IllegalStateException("method " + name + " is too large");
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(1);                      // attributes: Code
+            out.writeShort(this.codeAttribute);
+            out.writeInt(12 + code.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(0);                      // exception table
+            out.writeShort(0);                      // code attributes
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        this.methods.add(bytes.toByteArray());
+    }
+
+    /**
+     * @return the finished class file
+     */
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeShort(0);
+            out.writeShort(MAJOR_VERSION);
+            out.writeShort(this.poolSize);
+            this.poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(this.thisClass);
+            out.writeShort(this.superClass);
+            out.writeShort(0);                      // interfaces
+            out.writeShort(0);                      // fields
+            out.writeShort(this.methods.size());
+            for (byte[] method : this.methods) {
+                out.write(method);
+            }
+            out.writeShort(0);                      // class attributes
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        return bytes.toByteArray();
+    }
+
+    private interface PoolWriter {
+        void write() throws IOException;
+    }
+
+    private int entry(List<Object> key, PoolWriter writer) {
+        Integer index = this.poolIndex.get(key);
+        if (index == null) {
+            if (this.poolSize >= MAX_POOL_SIZE) {
+                throw new IllegalStateException("constant pool is full");
+            }
+            try {
+                writer.write();
+            }
+            catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            index = this.poolSize++;
+            this.poolIndex.put(key, index);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,207 @@
+package dendron.jit;
+
+import dendron.Errors;
+import dendron.treenodes.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * A cheaper alternative to the {@link JitCompiler}. Instead of generating
+ * bytecode, each node of the program is turned, once, into a small
+ * lambda that already knows its operator, its operands and the slots of
+ * the variables it uses. Running the program just calls the lambdas;
+ * no operator strings are compared and no names are looked up.
+ * <p>
+ * The common shapes <code>x op y</code>, <code>x op c</code> and
+ * <code>c op x</code>, where x and y are variables and c is a constant,
+ * get lambdas of their own, so most leaves cost nothing extra to call.
+ * Division by a non-zero constant needs no zero check.
+ * <p>
+ * Building the lambdas takes about as long as one walk of the tree, so
+ * this is the mode to use for programs that are run only a few times.
+ *
+ * @author RIT CS
+ */
+public class ClosureCompiler {
+
+    /**
+     * A compiled expression
+     */
+    @FunctionalInterface
+    private interface Expr {
+        int eval(int[] frame);
+    }
+
+    /**
+     * A compiled statement
+     */
+    @FunctionalInterface
+    private interface Stmt {
+        void run(int[] frame, IntConsumer printer);
+    }
+
+    /**
+     * The slot of every variable assigned so far,
+     * in the order they were first assigned
+     */
+    private final Map<String, Integer> slots = new LinkedHashMap<>();
+
+    private ClosureCompiler() {
+    }
+
+    /**
+     * Compile a program to closures.
+     * @param program the program to compile
+     * @return the compiled program, ready to run
+     */
+    public static CompiledProgram compile(Program program) {
+        ClosureCompiler compiler = new ClosureCompiler();
+        List<ActionNode> actions = program.getActions();
+        Stmt[] statements = new Stmt[actions.size()];
+        for (int i = 0; i < statements.length; i++) {
+            statements[i] = compiler.statement(actions.get(i));
+        }
+        return new CompiledProgram((frame, printer) -> {
+            for (Stmt statement : statements) {
+                statement.run(frame, printer);
+            }
+        }, compiler.slots.keySet().toArray(new String[0]));
+    }
+
+    private Stmt statement(ActionNode action) {
+        if (action instanceof Assignment assignment) {
+            Expr rhs = expression(assignment.getRhs());
+            int slot = this.slots.computeIfAbsent(assignment.getIdent(),
+                                                  n -> this.slots.size());
+            return (frame, printer) -> frame[slot] = rhs.eval(frame);
+        }
+        Expr printee = expression(((Print) action).getPrintee());
+        return (frame, printer) -> printer.accept(printee.eval(frame));
+    }
+
+    private Expr expression(ExpressionNode expr) {
+        if (expr instanceof Constant constant) {
+            int value = constant.getValue();
+            return frame -> value;
+        }
+        else if (expr instanceof Variable variable) {
+            Integer slot = this.slots.get(variable.getName());
+            if (slot == null) {
+                // Nothing assigns it before this point, so reading it
+                // is always an error.
+                String name = variable.getName();
+                return frame -> {
+                    Errors.report(Errors.Type.UNINITIALIZED, name);
+                    return 0;
+                };
+            }
+            int s = slot;
+            return frame -> frame[s];
+        }
+        else if (expr instanceof UnaryOperation unary) {
+            Expr operand = expression(unary.getExpr());
+            if (unary.getOperator().equals("_")) {
+                return frame -> -operand.eval(frame);
+            }
+            return frame -> (int) Math.sqrt(operand.eval(frame));
+        }
+        BinaryOperation binary = (BinaryOperation) expr;
+        switch (binary.getOperator()) {
+            case "+": return add(binary.getLeft(), binary.getRight());
+            case "-": return subtract(binary.getLeft(), binary.getRight());
+            case "*": return multiply(binary.getLeft(), binary.getRight());
+            default: return divide(binary.getLeft(), binary.getRight());
+        }
+    }
+
+    /**
+     * @return the slot of a variable that has certainly been assigned,
+     *         or -1 if expr is not one
+     */
+    private int slotOf(ExpressionNode expr) {
+        if (expr instanceof Variable variable) {
+            return this.slots.getOrDefault(variable.getName(), -1);
+        }
+        return -1;
+    }
+
+    private Expr add(ExpressionNode left, ExpressionNode right) {
+        int a = slotOf(left);
+        int b = slotOf(right);
+        if (a >= 0 && b >= 0) {
+            return frame -> frame[a] + frame[b];
+        }
+        if (a >= 0 && right instanceof Constant c) {
+            int value = c.getValue();
+            return frame -> frame[a] + value;
+        }
+        if (b >= 0 && left instanceof Constant c) {
+            int value = c.getValue();
+            return frame -> value + frame[b];
+        }
+        Expr l = expression(left);
+        Expr r = expression(right);
+        return frame -> l.eval(frame) + r.eval(frame);
+    }
+
+    private Expr subtract(ExpressionNode left, ExpressionNode right) {
+        int a = slotOf(left);
+        int b = slotOf(right);
+        if (a >= 0 && b >= 0) {
+            return frame -> frame[a] - frame[b];
+        }
+        if (a >= 0 && right instanceof Constant c) {
+            int value = c.getValue();
+            return frame -> frame[a] - value;
+        }
+        if (b >= 0 && left instanceof Constant c) {
+            int value = c.getValue();
+            return frame -> value - frame[b];
+        }
+        Expr l = expression(left);
+        Expr r = expression(right);
+        return frame -> l.eval(frame) - r.eval(frame);
+    }
+
+    private Expr multiply(ExpressionNode left, ExpressionNode right) {
+        int a = slotOf(left);
+        int b = slotOf(right);
+        if (a >= 0 && b >= 0) {
+            return frame -> frame[a] * frame[b];
+        }
+        if (a >= 0 && right instanceof Constant c) {
+            int value = c.getValue();
+            return frame -> frame[a] * value;
+        }
+        if (b >= 0 && left instanceof Constant c) {
+            int value = c.getValue();
+            return frame -> value * frame[b];
+        }
+        Expr l = expression(left);
+        Expr r = expression(right);
+        return frame -> l.eval(frame) * r.eval(frame);
+    }
+
+    /**
+     * The divisor is evaluated and checked before the dividend,
+     * just as in {@link BinaryOperation#evaluate(Frame)}.
+     */
+    private Expr divide(ExpressionNode left, ExpressionNode right) {
+        Expr l = expression(left);
+        if (right instanceof Constant c && c.getValue() != 0) {
+            int value = c.getValue();
+            return frame -> l.eval(frame) / value;
+        }
+        Expr r = expression(right);
+        return frame -> {
+            int divisor = r.eval(frame);
+            if (divisor == 0) {
+                Errors.report(Errors.Type.DIVIDE_BY_ZERO, null);
+            }
+            return l.eval(frame) / divisor;
+        };
+    }
+}
@@ -0,0 +1,59 @@
+package dendron.jit;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * A Dendron program that has been compiled into something the JVM can
+ * run directly, either by the {@link JitCompiler} or by the
+ * {@link ClosureCompiler}. It can be run any number of times.
+ *
+ * @author RIT CS
+ */
+public class CompiledProgram {
+
+    /**
+     * The compiled statements, which read and write variables
+     * by slot in an int array
+     */
+    interface Body {
+        void run(int[] frame, IntConsumer printer) throws Throwable;
+    }
+
+    private final Body body;
+    private final String[] names;
+
+    /**
+     * @param body the compiled statements
+     * @param names the variables the program assigns, indexed by slot
+     */
+    CompiledProgram(Body body, String[] names) {
+        this.body = body;
+        this.names = names;
+    }
+
+    /**
+     * Run the program.
+     * @param printer receives the value of each print statement, in order
+     * @return the final value of every variable the program assigns,
+     *         added in the order the variables were first assigned
+     */
+    public Map<String, Integer> run(IntConsumer printer) {
+        int[] frame = new int[this.names.length];
+        try {
+            this.body.run(frame, printer);
+        }
+        catch (RuntimeException | Error e) {
+            throw e;
+        }
+        catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+        Map<String, Integer> symTab = new HashMap<>();
+        for (int slot = 0; slot < this.names.length; slot++) {
+            symTab.put(this.names[slot], frame[slot]);
+        }
+        return symTab;
+    }
+}
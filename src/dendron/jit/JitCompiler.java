@@ -0,0 +1,392 @@
+package dendron.jit;
+
+import dendron.treenodes.*;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+/**
+ * A third way to run Dendron programs, after the tree interpreter and the
+ * Soros machine: translate the {@link Program} into JVM bytecode, load it
+ * as a hidden class, and let HotSpot compile it to machine code.
+ * <p>
+ * Each variable becomes a JVM local variable. The operators become
+ * <code>iadd</code>, <code>isub</code>, <code>imul</code>,
+ * <code>idiv</code> and <code>ineg</code>, and square root is a call to a
+ * small helper. Because a Dendron program has no branches, the compiler
+ * always knows whether a variable has been assigned. A read of an
+ * unassigned variable is compiled as a call that reports the error at
+ * the point where the interpreter would report it. A divisor is checked
+ * for zero before the dividend is evaluated, in the same order as
+ * {@link BinaryOperation#evaluate(Frame)}.
+ * <p>
+ * A JVM method is limited to 64K of code, so statements are grouped into
+ * several methods. Each group loads the variables it needs from an
+ * <code>int[]</code> frame when it starts and stores the ones it assigns
+ * back when it finishes. A class's constant pool is limited to 64K
+ * entries, so a very large program becomes several classes, run
+ * one after the other.
+ *
+ * @author RIT CS
+ */
+public class JitCompiler {
+
+    private static final String CLASS_NAME = "dendron/jit/JitProgram";
+    private static final String RUNTIME = "dendron/jit/JitRuntime";
+    private static final String PRINTER = "java/util/function/IntConsumer";
+    private static final String METHOD_TYPE =
+            "([IL" + PRINTER + ";)V";
+
+    /**
+     * Roughly how many bytes of code go into one method before
+     * a new one is started
+     */
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * A new class is started when fewer constant pool entries than this
+     * are left, which is far more than one statement of any sensible
+     * size needs
+     */
+    private static final int POOL_RESERVE = 4096;
+
+    /**
+     * Locals 0 and 1 hold the frame and the printer
+     */
+    private static final int FIRST_LOCAL = 2;
+
+    private final Map<String, Integer> slots = new LinkedHashMap<>();
+
+    // State of the class being generated
+    private ClassBuilder classFile;
+    private final List<String> chunkNames = new ArrayList<>();
+
+    // State of the chunk being generated
+    private Code body;
+    private Map<String, Integer> locals;
+    private Set<String> loaded;
+    private Set<String> stored;
+    private int maxStack;
+
+    private JitCompiler() {
+    }
+
+    /**
+     * Compile a program to bytecode and load it.
+     * @param program the program to compile
+     * @return the loaded program, ready to run
+     * @throws IllegalStateException if a single statement is too large
+     *         to fit in one class
+     */
+    public static CompiledProgram compile(Program program) {
+        JitCompiler compiler = new JitCompiler();
+        List<MethodHandle> parts = new ArrayList<>();
+        for (byte[] bytes : compiler.translate(program)) {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup()
+                        .defineHiddenClass(bytes, true);
+                parts.add(lookup.findStatic(lookup.lookupClass(), "run",
+                        MethodType.methodType(void.class, int[].class,
+                                              IntConsumer.class)));
+            }
+            catch (IllegalAccessException | NoSuchMethodException e) {
+                throw new IllegalStateException("cannot load compiled program", e);
+            }
+        }
+        return new CompiledProgram((frame, printer) -> {
+            for (MethodHandle part : parts) {
+                part.invokeExact(frame, printer);
+            }
+        }, compiler.slots.keySet().toArray(new String[0]));
+    }
+
+    /**
+     * Translate the program into as many classes as it takes.
+     * @return the class files, in the order they must run
+     */
+    private List<byte[]> translate(Program program) {
+        List<byte[]> classes = new ArrayList<>();
+        startClass();
+        startChunk();
+        for (ActionNode action : program.getActions()) {
+            if (this.classFile.poolRoom() < POOL_RESERVE) {
+                finishChunk();
+                classes.add(finishClass());
+                startClass();
+                startChunk();
+            }
+            else if (this.body.size() > CHUNK_SIZE) {
+                finishChunk();
+                startChunk();
+            }
+            statement(action);
+        }
+        finishChunk();
+        classes.add(finishClass());
+        return classes;
+    }
+
+    private void startClass() {
+        this.classFile = new ClassBuilder(CLASS_NAME);
+        this.chunkNames.clear();
+    }
+
+    /**
+     * Add the method that runs every chunk of the class in turn.
+     * @return the finished class file
+     */
+    private byte[] finishClass() {
+        Code run = new Code(this.classFile);
+        for (String chunk : this.chunkNames) {
+            run.op(Code.ALOAD_0);
+            run.op(Code.ALOAD_1);
+            run.invokestatic(CLASS_NAME, chunk, METHOD_TYPE);
+        }
+        run.op(Code.RETURN);
+        this.classFile.addMethod(ClassBuilder.ACC_PUBLIC | ClassBuilder.ACC_STATIC,
+                                 "run", METHOD_TYPE, 2, 2, run.toByteArray());
+        return this.classFile.toByteArray();
+    }
+
+    private void startChunk() {
+        this.body = new Code(this.classFile);
+        this.locals = new LinkedHashMap<>();
+        this.loaded = new HashSet<>();
+        this.stored = new HashSet<>();
+        this.maxStack = 3;
+    }
+
+    /**
+     * Wrap the chunk's statements in code that loads the variables
+     * they read from the frame and stores the ones they assign.
+     */
+    private void finishChunk() {
+        Code code = new Code(this.classFile);
+        for (String name : this.loaded) {
+            code.op(Code.ALOAD_0);
+            code.iconst(this.slots.get(name));
+            code.op(Code.IALOAD);
+            code.istore(this.locals.get(name));
+        }
+        code.append(this.body);
+        for (String name : this.stored) {
+            code.op(Code.ALOAD_0);
+            code.iconst(this.slots.get(name));
+            code.iload(this.locals.get(name));
+            code.op(Code.IASTORE);
+        }
+        code.op(Code.RETURN);
+        String name = "s" + this.chunkNames.size();
+        this.chunkNames.add(name);
+        this.classFile.addMethod(ClassBuilder.ACC_STATIC, name, METHOD_TYPE,
+                                 this.maxStack,
+                                 FIRST_LOCAL + this.locals.size(),
+                                 code.toByteArray());
+    }
+
+    private void statement(ActionNode action) {
+        if (action instanceof Assignment assignment) {
+            int depth = expression(assignment.getRhs());
+            this.maxStack = Math.max(this.maxStack, depth);
+            String ident = assignment.getIdent();
+            this.slots.putIfAbsent(ident, this.slots.size());
+            this.body.istore(localFor(ident));
+            this.stored.add(ident);
+        }
+        else {
+            this.body.op(Code.ALOAD_1);
+            int depth = 1 + expression(((Print) action).getPrintee());
+            this.maxStack = Math.max(this.maxStack, depth);
+            this.body.invokeinterface(PRINTER, "accept", "(I)V", 2);
+        }
+    }
+
+    /**
+     * Generate the code for an expression.
+     * @return the greatest stack depth the code reaches
+     */
+    private int expression(ExpressionNode expr) {
+        if (expr instanceof Constant constant) {
+            this.body.iconst(constant.getValue());
+            return 1;
+        }
+        else if (expr instanceof Variable variable) {
+            String name = variable.getName();
+            if (!this.slots.containsKey(name)) {
+                this.body.ldc(this.classFile.string(name));
+                this.body.invokestatic(RUNTIME, "uninitialized",
+                                       "(Ljava/lang/String;)I");
+            }
+            else {
+                if (!this.locals.containsKey(name)) {
+                    this.loaded.add(name);
+                }
+                this.body.iload(localFor(name));
+            }
+            return 1;
+        }
+        else if (expr instanceof UnaryOperation unary) {
+            int depth = expression(unary.getExpr());
+            if (unary.getOperator().equals("_")) {
+                this.body.op(Code.INEG);
+            }
+            else {
+                this.body.invokestatic(RUNTIME, "sqrt", "(I)I");
+            }
+            return depth;
+        }
+        BinaryOperation binary = (BinaryOperation) expr;
+        String operator = binary.getOperator();
+        if (operator.equals("/")) {
+            int right = expression(binary.getRight());
+            this.body.invokestatic(RUNTIME, "checkDivisor", "(I)I");
+            int left = expression(binary.getLeft());
+            this.body.op(Code.SWAP);
+            this.body.op(Code.IDIV);
+            return Math.max(right, 1 + left);
+        }
+        int left = expression(binary.getLeft());
+        int right = expression(binary.getRight());
+        this.body.op(switch (operator) {
+            case "+" -> Code.IADD;
+            case "-" -> Code.ISUB;
+            default -> Code.IMUL;
+        });
+        return Math.max(left, 1 + right);
+    }
+
+    private int localFor(String name) {
+        return this.locals.computeIfAbsent(name,
+                n -> FIRST_LOCAL + this.locals.size());
+    }
+
+    /**
+     * A growing buffer of bytecode for one method.
+     */
+    private static final class Code {
+        static final int ICONST_0 = 0x03;
+        static final int BIPUSH = 0x10;
+        static final int SIPUSH = 0x11;
+        static final int LDC = 0x12;
+        static final int LDC_W = 0x13;
+        static final int ILOAD = 0x15;
+        static final int ILOAD_0 = 0x1a;
+        static final int ALOAD_0 = 0x2a;
+        static final int ALOAD_1 = 0x2b;
+        static final int IALOAD = 0x2e;
+        static final int ISTORE = 0x36;
+        static final int ISTORE_0 = 0x3b;
+        static final int IASTORE = 0x4f;
+        static final int SWAP = 0x5f;
+        static final int IADD = 0x60;
+        static final int ISUB = 0x64;
+        static final int IMUL = 0x68;
+        static final int IDIV = 0x6c;
+        static final int INEG = 0x74;
+        static final int RETURN = 0xb1;
+        static final int INVOKESTATIC = 0xb8;
+        static final int INVOKEINTERFACE = 0xb9;
+        static final int WIDE = 0xc4;
+
+        private final ClassBuilder classFile;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        Code(ClassBuilder classFile) {
+            this.classFile = classFile;
+        }
+
+        int size() {
+            return this.bytes.size();
+        }
+
+        void op(int opcode) {
+            this.bytes.write(opcode);
+        }
+
+        void u2(int value) {
+            this.bytes.write(value >>> 8);
+            this.bytes.write(value);
+        }
+
+        void iconst(int value) {
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value);
+            }
+            else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(BIPUSH);
+                op(value & 0xFF);
+            }
+            else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(SIPUSH);
+                u2(value & 0xFFFF);
+            }
+            else {
+                ldc(this.classFile.integer(value));
+            }
+        }
+
+        void ldc(int index) {
+            if (index < 256) {
+                op(LDC);
+                op(index);
+            }
+            else {
+                op(LDC_W);
+                u2(index);
+            }
+        }
+
+        void iload(int local) {
+            local(ILOAD, ILOAD_0, local);
+        }
+
+        void istore(int local) {
+            local(ISTORE, ISTORE_0, local);
+        }
+
+        private void local(int opcode, int shortForm, int local) {
+            if (local < 4) {
+                op(shortForm + local);
+            }
+            else if (local < 256) {
+                op(opcode);
+                op(local);
+            }
+            else {
+                op(WIDE);
+                op(opcode);
+                u2(local);
+            }
+        }
+
+        void invokestatic(String owner, String name, String descriptor) {
+            op(INVOKESTATIC);
+            u2(this.classFile.methodRef(owner, name, descriptor));
+        }
+
+        void invokeinterface(String owner, String name, String descriptor,
+                             int argSlots) {
+            op(INVOKEINTERFACE);
+            u2(this.classFile.interfaceMethodRef(owner, name, descriptor));
+            op(argSlots);
+            op(0);
+        }
+
+        void append(Code other) {
+            this.bytes.writeBytes(other.toByteArray());
+        }
+
+        byte[] toByteArray() {
+            return this.bytes.toByteArray();
+        }
+    }
+}
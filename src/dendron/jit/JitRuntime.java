@@ -0,0 +1,49 @@
+package dendron.jit;
+
+import dendron.Errors;
+
+/**
+ * The helper methods that code generated by the {@link JitCompiler}
+ * calls for anything more than a single bytecode. They report errors
+ * exactly as the tree interpreter does. They are small enough that
+ * HotSpot inlines them into the generated code.
+ *
+ * @author RIT CS
+ */
+final class JitRuntime {
+
+    private JitRuntime() {
+    }
+
+    /**
+     * Check a divisor before the division is done.
+     * @param divisor the value about to be divided by
+     * @return the divisor, if it is not zero
+     */
+    static int checkDivisor(int divisor) {
+        if (divisor == 0) {
+            Errors.report(Errors.Type.DIVIDE_BY_ZERO, null);
+        }
+        return divisor;
+    }
+
+    /**
+     * The Dendron square root operator.
+     * @param value the operand
+     * @return the integer part of the square root
+     */
+    static int sqrt(int value) {
+        return (int) Math.sqrt(value);
+    }
+
+    /**
+     * Report a read of a variable that has not been assigned yet.
+     * @param name the variable's name
+     * @return nothing, in practice; the int return type lets the call
+     *         stand in for the missing value
+     */
+    static int uninitialized(String name) {
+        Errors.report(Errors.Type.UNINITIALIZED, name);
+        return 0;
+    }
+}
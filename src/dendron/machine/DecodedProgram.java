@@ -0,0 +1,119 @@
+package dendron.machine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Soros program flattened into parallel arrays of ints, ready for
+ * {@link SwitchEngine}. Each instruction is an {@link Soros.Opcode}
+ * number in {@link #opcodes}. Its operand, if any, is at the same
+ * index in {@link #operands}: the constant for PUSH, or the variable's
+ * slot number for LOAD and STORE.
+ * Variable names are resolved to slots once, here, instead of being
+ * looked up every time the instruction runs.
+ *
+ * @author RIT CS
+ */
+public class DecodedProgram {
+
+    /*
+     * Opcode numbers as compile-time constants, so they can label the
+     * cases of a switch. They must match the order of Soros.Opcode.
+     */
+    static final int PUSH = 0;
+    static final int LOAD = 1;
+    static final int STORE = 2;
+    static final int ADD = 3;
+    static final int SUB = 4;
+    static final int MUL = 5;
+    static final int DIV = 6;
+    static final int NEG = 7;
+    static final int SQRT = 8;
+    static final int PRINT = 9;
+
+    static {
+        if ( PUSH != Soros.Opcode.PUSH.ordinal() ||
+             LOAD != Soros.Opcode.LOAD.ordinal() ||
+             STORE != Soros.Opcode.STORE.ordinal() ||
+             ADD != Soros.Opcode.ADD.ordinal() ||
+             SUB != Soros.Opcode.SUB.ordinal() ||
+             MUL != Soros.Opcode.MUL.ordinal() ||
+             DIV != Soros.Opcode.DIV.ordinal() ||
+             NEG != Soros.Opcode.NEG.ordinal() ||
+             SQRT != Soros.Opcode.SQRT.ordinal() ||
+             PRINT != Soros.Opcode.PRINT.ordinal() ) {
+            throw new AssertionError( "opcode numbers out of date" );
+        }
+    }
+
+    final int[] opcodes;
+
+    final int[] operands;
+
+    final String[] names;
+
+    private DecodedProgram( int[] opcodes, int[] operands, String[] names ) {
+        this.opcodes = opcodes;
+        this.operands = operands;
+        this.names = names;
+    }
+
+    /**
+     * Translate a list of instruction objects into flat arrays.
+     * Slots are numbered in the order their variables first appear.
+     * @param program the instructions, in execution order, with any
+     *                fused ones {@link Superinstructions#expand expanded}
+     * @return the decoded form of the program
+     */
+    public static DecodedProgram decode( List< Soros.Primitive > program ) {
+        int size = program.size();
+        int[] opcodes = new int[ size ];
+        int[] operands = new int[ size ];
+        Map< String, Integer > slots = new HashMap<>();
+        List< String > names = new ArrayList<>();
+        int pc = 0;
+        for ( Soros.Primitive instr: program ) {
+            Soros.Opcode op = instr.opcode();
+            opcodes[ pc ] = op.ordinal();
+            switch ( op ) {
+                case PUSH -> operands[ pc ] =
+                        ( (Soros.PushConst)instr ).getValue();
+                case LOAD -> operands[ pc ] = slotOf(
+                        ( (Soros.Load)instr ).getName(), slots, names );
+                case STORE -> operands[ pc ] = slotOf(
+                        ( (Soros.Store)instr ).getName(), slots, names );
+                default -> {}
+            }
+            ++pc;
+        }
+        return new DecodedProgram( opcodes, operands,
+                                   names.toArray( new String[ 0 ] ) );
+    }
+
+    private static int slotOf( String name, Map< String, Integer > slots,
+                               List< String > names ) {
+        Integer slot = slots.get( name );
+        if ( slot == null ) {
+            slot = names.size();
+            slots.put( name, slot );
+            names.add( name );
+        }
+        return slot;
+    }
+
+    /**
+     * @return how many instructions are in the program
+     */
+    public int size() {
+        return this.opcodes.length;
+    }
+
+    /**
+     * @return how many distinct variables the program uses
+     */
+    public int variableCount() {
+        return this.names.length;
+    }
+}
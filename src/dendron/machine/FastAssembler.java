@@ -0,0 +1,411 @@
+package dendron.machine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * An assembler for very large Soros assembly language files. It gives
+ * the same program, and prints the same complaints, as
+ * {@link InstructionReader#assemble(java.util.Scanner)}, but it works
+ * on the bytes of the file directly. The file is memory-mapped and
+ * mnemonics and numbers are decoded in place, so no String is made for
+ * any line, mnemonic or constant. A variable's name is decoded once per
+ * chunk, and all the LOAD and STORE instructions for it share one object.
+ * <p>
+ * A big file is cut into chunks at line boundaries and the chunks are
+ * assembled in parallel. Their instructions are then put together in
+ * order into one array.
+ *
+ * @author RIT CS
+ */
+public class FastAssembler {
+
+    /**
+     * Files smaller than this are assembled as one chunk
+     */
+    private static final long MIN_CHUNK = 4L << 20;
+
+    /**
+     * A chunk must fit in one mapping
+     */
+    private static final long MAX_CHUNK = 1L << 30;
+
+    /**
+     * Scanner's default charset, which variable names are decoded with
+     */
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    /**
+     * Assemble a file of Soros assembly language.
+     * @param file the assembly code
+     * @return the program, ready to execute
+     * @throws IOException if the file cannot be read
+     * @throws NumberFormatException if a PUSH has a bad constant
+     * @throws ArrayIndexOutOfBoundsException if a PUSH, LOAD or STORE
+     *         has no operand
+     */
+    public static List< Soros.Instruction > assemble( Path file )
+            throws IOException {
+        try ( FileChannel in = FileChannel.open( file ) ) {
+            long[] bounds = split( in );
+            Chunk[] chunks = IntStream.range( 0, bounds.length - 1 )
+                    .parallel()
+                    .mapToObj( k -> new Chunk( in, bounds[ k ],
+                                               bounds[ k + 1 ] ) )
+                    .toArray( Chunk[]::new );
+            return merge( chunks );
+        }
+        catch( UncheckedIOException uioe ) {
+            throw uioe.getCause();
+        }
+    }
+
+    /**
+     * Choose where the chunks start and end. Each one but the first
+     * starts just after a newline.
+     * @return the offsets of the chunk boundaries, from 0 to the size
+     */
+    private static long[] split( FileChannel in ) throws IOException {
+        long size = in.size();
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        long count = Math.max( ( size + MAX_CHUNK - 1 ) / MAX_CHUNK,
+                               Math.min( size / MIN_CHUNK,
+                                         4L * parallelism ) );
+        count = Math.max( count, 1 );
+        List< Long > bounds = new ArrayList<>();
+        bounds.add( 0L );
+        ByteBuffer window = ByteBuffer.allocate( 4096 );
+        for ( long k = 1; k < count; ++k ) {
+            long at = nextLine( in, size / count * k, window );
+            if ( at < size && at > bounds.get( bounds.size() - 1 ) ) {
+                bounds.add( at );
+            }
+        }
+        bounds.add( size );
+        return bounds.stream().mapToLong( Long::longValue ).toArray();
+    }
+
+    /**
+     * @return the offset just past the first newline at or after
+     *         position, or the size of the file if there is none
+     */
+    private static long nextLine( FileChannel in, long position,
+                                  ByteBuffer window ) throws IOException {
+        while ( true ) {
+            window.clear();
+            int n = in.read( window, position );
+            if ( n <= 0 ) {
+                return in.size();
+            }
+            for ( int i = 0; i < n; ++i ) {
+                if ( window.get( i ) == '\n' ) {
+                    return position + i + 1;
+                }
+            }
+            position += n;
+        }
+    }
+
+    /**
+     * Join the chunks' instructions, passing on their complaints in
+     * order, and stopping at the first end marker or error.
+     */
+    private static List< Soros.Instruction > merge( Chunk[] chunks ) {
+        int total = 0;
+        for ( Chunk chunk: chunks ) {
+            total += chunk.size;
+        }
+        Soros.Instruction[] program = new Soros.Instruction[ total ];
+        int size = 0;
+        for ( Chunk chunk: chunks ) {
+            System.arraycopy( chunk.code, 0, program, size, chunk.size );
+            size += chunk.size;
+            for ( String complaint: chunk.complaints ) {
+                System.err.println( complaint );
+            }
+            if ( chunk.error != null ) {
+                throw chunk.error;
+            }
+            if ( chunk.ended ) {
+                break;
+            }
+        }
+        return Arrays.asList( size == total ?
+                program : Arrays.copyOf( program, size ) );
+    }
+
+    /**
+     * One chunk of the file, assembled as soon as it is created
+     */
+    private static final class Chunk {
+        private final ByteBuffer bytes;
+        private Soros.Instruction[] code = new Soros.Instruction[ 1024 ];
+        private int size = 0;
+        private final List< String > complaints = new ArrayList<>();
+        private boolean ended = false;
+        private RuntimeException error = null;
+
+        // Instructions without operands, shared
+        private final Soros.Instruction add = new Soros.Add();
+        private final Soros.Instruction subtract = new Soros.Subtract();
+        private final Soros.Instruction multiply = new Soros.Multiply();
+        private final Soros.Instruction divide = new Soros.Divide();
+        private final Soros.Instruction negate = new Soros.Negate();
+        private final Soros.Instruction squareRoot = new Soros.SquareRoot();
+        private final Soros.Instruction print = new Soros.Print();
+
+        // The variables seen so far, in an open-addressed hash table
+        // keyed by the bytes of their names
+        private byte[][] names = new byte[ 64 ][];
+        private Soros.Load[] loads = new Soros.Load[ 64 ];
+        private Soros.Store[] stores = new Soros.Store[ 64 ];
+        private int nameCount = 0;
+
+        Chunk( FileChannel in, long start, long end ) {
+            MappedByteBuffer mapped;
+            try {
+                mapped = in.map( FileChannel.MapMode.READ_ONLY,
+                                 start, end - start );
+            }
+            catch( IOException ioe ) {
+                throw new UncheckedIOException( ioe );
+            }
+            this.bytes = mapped;
+            try {
+                this.assemble();
+            }
+            catch( RuntimeException re ) {
+                this.error = re;
+            }
+        }
+
+        private static boolean isSpace( byte b ) {
+            return b == ' ' || b == '\t' || b == 0x0B || b == '\f' ||
+                   b == '\r';
+        }
+
+        private void assemble() {
+            ByteBuffer in = this.bytes;
+            int limit = in.limit();
+            int pos = 0;
+            while ( pos < limit && !this.ended ) {
+                int lineEnd = pos;
+                while ( lineEnd < limit && in.get( lineEnd ) != '\n' &&
+                        !( in.get( lineEnd ) == '\r' && ( lineEnd + 1 == limit ||
+                           in.get( lineEnd + 1 ) != '\n' ) ) ) {
+                    ++lineEnd;
+                }
+                line( pos, lineEnd );
+                pos = lineEnd + 1;
+            }
+        }
+
+        /**
+         * Assemble the line between two offsets.
+         */
+        private void line( int start, int end ) {
+            ByteBuffer in = this.bytes;
+            while ( start < end && isSpace( in.get( start ) ) ) ++start;
+            while ( end > start && isSpace( in.get( end - 1 ) ) ) --end;
+            int wordEnd = start;
+            while ( wordEnd < end && !isSpace( in.get( wordEnd ) ) ) {
+                ++wordEnd;
+            }
+            int operand = wordEnd;
+            while ( operand < end && isSpace( in.get( operand ) ) ) {
+                ++operand;
+            }
+            int operandEnd = operand;
+            while ( operandEnd < end && !isSpace( in.get( operandEnd ) ) ) {
+                ++operandEnd;
+            }
+
+            switch ( mnemonic( start, wordEnd ) ) {
+                case "PUSH" -> add( new Soros.PushConst(
+                        number( operand, operandEnd ) ) );
+                case "LOAD" -> {
+                    int slot = name( operand, operandEnd );
+                    add( this.loads[ slot ] );
+                }
+                case "STORE" -> {
+                    int slot = name( operand, operandEnd );
+                    add( this.stores[ slot ] );
+                }
+                case "ADD" -> add( this.add );
+                case "SUB" -> add( this.subtract );
+                case "MUL" -> add( this.multiply );
+                case "DIV" -> add( this.divide );
+                case "NEG" -> add( this.negate );
+                case "SQRT" -> add( this.squareRoot );
+                case "PRINT" -> add( this.print );
+                case "." -> this.ended = true;
+                default -> this.complaints.add( "Illegal assembly instr " +
+                                                text( start, wordEnd ) );
+            }
+        }
+
+        /**
+         * Match a mnemonic against the known ones byte by byte.
+         * @return the same constant string as the mnemonic, or null
+         */
+        private String mnemonic( int start, int end ) {
+            String[] known = switch ( end - start ) {
+                case 1 -> ONE;
+                case 3 -> THREE;
+                case 4 -> FOUR;
+                case 5 -> FIVE;
+                default -> NONE;
+            };
+            for ( String candidate: known ) {
+                if ( matches( candidate, start ) ) {
+                    return candidate;
+                }
+            }
+            return "";
+        }
+
+        private boolean matches( String candidate, int start ) {
+            for ( int i = 0; i < candidate.length(); ++i ) {
+                if ( this.bytes.get( start + i ) != candidate.charAt( i ) ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void add( Soros.Instruction instr ) {
+            if ( this.size == this.code.length ) {
+                this.code = Arrays.copyOf( this.code, this.size * 2 );
+            }
+            this.code[ this.size++ ] = instr;
+        }
+
+        private String text( int start, int end ) {
+            byte[] word = new byte[ end - start ];
+            this.bytes.get( start, word );
+            return new String( word, CHARSET );
+        }
+
+        private static void missingOperand( int start, int end ) {
+            if ( start == end ) {
+                // What split() would have given the original assembler
+                throw new ArrayIndexOutOfBoundsException(
+                        "Index 1 out of bounds for length 1" );
+            }
+        }
+
+        /**
+         * Decode a constant, just as {@link Integer#parseInt(String)}
+         * would.
+         */
+        private int number( int start, int end ) {
+            missingOperand( start, end );
+            int i = start;
+            boolean negative = false;
+            byte first = this.bytes.get( i );
+            if ( first == '-' || first == '+' ) {
+                negative = first == '-';
+                ++i;
+            }
+            long value = 0;
+            boolean ok = i < end;
+            for ( ; i < end && ok; ++i ) {
+                int digit = this.bytes.get( i ) - '0';
+                ok = digit >= 0 && digit <= 9;
+                value = value * 10 + digit;
+                ok &= value <= (long)Integer.MAX_VALUE + 1;
+            }
+            if ( !ok || ( !negative && value > Integer.MAX_VALUE ) ) {
+                // Let parseInt say what is wrong with it.
+                return Integer.parseInt( text( start, end ) );
+            }
+            return (int)( negative ? -value : value );
+        }
+
+        /**
+         * Find a variable's slot in the table, adding it if it is new.
+         */
+        private int name( int start, int end ) {
+            missingOperand( start, end );
+            int hash = 0x811C9DC5;
+            for ( int i = start; i < end; ++i ) {
+                hash = ( hash ^ this.bytes.get( i ) ) * 0x01000193;
+            }
+            int mask = this.names.length - 1;
+            int slot = hash & mask;
+            while ( this.names[ slot ] != null ) {
+                if ( sameName( this.names[ slot ], start, end ) ) {
+                    return slot;
+                }
+                slot = ( slot + 1 ) & mask;
+            }
+            byte[] name = new byte[ end - start ];
+            this.bytes.get( start, name );
+            String ident = new String( name, CHARSET );
+            this.names[ slot ] = name;
+            this.loads[ slot ] = new Soros.Load( ident );
+            this.stores[ slot ] = new Soros.Store( ident );
+            if ( ++this.nameCount * 2 > this.names.length ) {
+                grow();
+                return name( start, end );
+            }
+            return slot;
+        }
+
+        private boolean sameName( byte[] name, int start, int end ) {
+            if ( name.length != end - start ) {
+                return false;
+            }
+            for ( int i = 0; i < name.length; ++i ) {
+                if ( name[ i ] != this.bytes.get( start + i ) ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void grow() {
+            byte[][] oldNames = this.names;
+            Soros.Load[] oldLoads = this.loads;
+            Soros.Store[] oldStores = this.stores;
+            this.names = new byte[ oldNames.length * 2 ][];
+            this.loads = new Soros.Load[ this.names.length ];
+            this.stores = new Soros.Store[ this.names.length ];
+            int mask = this.names.length - 1;
+            for ( int old = 0; old < oldNames.length; ++old ) {
+                byte[] name = oldNames[ old ];
+                if ( name == null ) continue;
+                int hash = 0x811C9DC5;
+                for ( byte b: name ) {
+                    hash = ( hash ^ b ) * 0x01000193;
+                }
+                int slot = hash & mask;
+                while ( this.names[ slot ] != null ) {
+                    slot = ( slot + 1 ) & mask;
+                }
+                this.names[ slot ] = name;
+                this.loads[ slot ] = oldLoads[ old ];
+                this.stores[ slot ] = oldStores[ old ];
+            }
+        }
+    }
+
+    private static final String[] ONE = { InstructionReader.EOF };
+    private static final String[] THREE = {
+        Soros.ADD, Soros.SUBTRACT, Soros.MULTIPLY, Soros.DIVIDE, Soros.NEGATE
+    };
+    private static final String[] FOUR = {
+        Soros.PUSH, Soros.LOAD, Soros.SQUARE_ROOT
+    };
+    private static final String[] FIVE = { Soros.STORE, Soros.PRINT };
+    private static final String[] NONE = {};
+}
@@ -1,7 +1,12 @@
 package dendron.machine;
 
-import java.io.File;
-import java.io.FileNotFoundException;
+import dendron.DendronException;
+import dendron.Errors;
+
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.function.Function;
 
@@ -14,6 +19,39 @@ public class InstructionReader {
 
     public static String EOF = ".";
 
+    /**
+     * The command line option that selects the {@link SwitchEngine}
+     */
+    public static String SWITCH_OPTION = "-switch";
+
+    /**
+     * The command line option that turns on {@link Superinstructions}
+     */
+    public static String FUSE_OPTION = "-fuse";
+
+    /**
+     * The command line option that profiles the run on {@link Soros}
+     * and shows a {@link SorosProfile} on standard error
+     */
+    public static String PROFILE_OPTION = "-profile";
+
+    /**
+     * The command line option that profiles the run like
+     * {@link #PROFILE_OPTION}, but shows the profile as JSON
+     */
+    public static String PROFILE_JSON_OPTION = "-profile=json";
+
+    /**
+     * The command line option that only verifies the code
+     * and shows its maximum stack depth
+     */
+    public static String VERIFY_OPTION = "-verify";
+
+    /**
+     * How many opcodes in a row a profile counts as one n-gram
+     */
+    private static final int PROFILE_GRAM_LENGTH = 3;
+
     private static Map< String, Function< String[], Soros.Instruction> > gen
             = new HashMap<>()
     {{
@@ -56,30 +94,174 @@ public class InstructionReader {
         return result;
     }
 
+    /**
+     * Check, without running it, that a program never pops an empty
+     * stack. Every instruction pops a fixed number of values and pushes
+     * a fixed number, and there are no jumps, so the depth of the stack
+     * before each instruction is known exactly. Fused instructions are
+     * checked as the instructions they were made from, by verifying
+     * what {@link Superinstructions#expand(List)} gives back.
+     * @param program the instructions to check
+     * @return the most values the stack ever holds
+     * @throws DendronException ({@link Errors.Type#STACK_UNDERFLOW})
+     *         naming the first instruction that would underflow
+     */
+    public static int verify( List< Soros.Primitive > program ) {
+        int depth = 0;
+        int maxDepth = 0;
+        int pc = 0;
+        for ( Soros.Primitive instr: program ) {
+            int pops = switch ( instr.opcode() ) {
+                case PUSH, LOAD -> 0;
+                case STORE, NEG, SQRT, PRINT -> 1;
+                case ADD, SUB, MUL, DIV -> 2;
+            };
+            int pushes = switch ( instr.opcode() ) {
+                case STORE, PRINT -> 0;
+                default -> 1;
+            };
+            if ( depth < pops ) {
+                Errors.report( Errors.Type.STACK_UNDERFLOW,
+                               instr + " at instruction " + pc );
+            }
+            depth += pushes - pops;
+            maxDepth = Math.max( maxDepth, depth );
+            ++pc;
+        }
+        return maxDepth;
+    }
+
     /**
      * Assemble and execute some Dendron machine code.
-     * @param args the name of the assembly language source file
+     * @param args any of the options {@link #SWITCH_OPTION}, to run the
+     *             code with the {@link SwitchEngine} instead of
+     *             {@link Soros}, {@link #FUSE_OPTION}, to fuse common
+     *             instruction sequences with {@link Superinstructions},
+     *             and {@link #PROFILE_OPTION} or
+     *             {@link #PROFILE_JSON_OPTION}, to profile the run, or
+     *             {@link #VERIFY_OPTION}, to only check the code;
+     *             then the name of the assembly language source file,
+     *             or of a binary image written by {@link SorosImage}
      */
     public static void main( String[] args ) {
+        boolean useSwitch = false;
+        boolean fuse = false;
+        String mode = null;
+        int options = 0;
+        while ( options < args.length && args[ options ].startsWith( "-" ) ) {
+            if ( args[ options ].equals( SWITCH_OPTION ) ) {
+                useSwitch = true;
+            }
+            else if ( args[ options ].equals( FUSE_OPTION ) ) {
+                fuse = true;
+            }
+            else if ( args[ options ].equals( VERIFY_OPTION ) ) {
+                mode = VERIFY_OPTION;
+            }
+            else if ( args[ options ].equals( PROFILE_OPTION ) ||
+                      args[ options ].equals( PROFILE_JSON_OPTION ) ) {
+                mode = args[ options ];
+            }
+            else {
+                break;
+            }
+            ++options;
+        }
+        args = Arrays.copyOfRange( args, options, args.length );
         Scanner codeFile = null;
         switch ( args.length ) {
             case 0 -> { codeFile = new Scanner( System.in ); }
             case 1 -> { try {
-                    codeFile = new Scanner( new File( args[ 0 ] ) );
+                    Path path = Path.of( args[ 0 ] );
+                    if ( SorosImage.isImage( path ) ) {
+                        run( SorosImage.load( path ), useSwitch, fuse,
+                             mode );
+                        return;
+                    }
+                    run( FastAssembler.assemble( path ), useSwitch, fuse,
+                         mode );
+                    return;
                 }
-                catch( FileNotFoundException fnfe ) {
-                    System.err.println( fnfe.getMessage() );
+                catch( NoSuchFileException nsfe ) {
+                    // Say why, as FileNotFoundException's message did.
+                    System.err.println( nsfe.getFile() +
+                                        " (No such file or directory)" );
+                    System.exit( 1 );
+                }
+                catch( AccessDeniedException ade ) {
+                    System.err.println( ade.getFile() +
+                                        " (Permission denied)" );
+                    System.exit( 1 );
+                }
+                catch( IOException ioe ) {
+                    System.err.println( ioe.getMessage() );
                     System.exit( 1 );
                 }
             }
             default -> {
                 System.err.println(
-                        "Usage: java InstructionReader [assembly-code-file]" );
+                        "Usage: java InstructionReader [" + SWITCH_OPTION +
+                        "] [" + FUSE_OPTION + "] [" + PROFILE_OPTION +
+                        "|" + PROFILE_JSON_OPTION + "|" + VERIFY_OPTION +
+                        "] [assembly-code-file|image-file]" );
                 System.exit( 1 );
             }
         }
         List< Soros.Instruction > code = assemble( codeFile );
-        new Soros().execute( code );
+        run( code, useSwitch, fuse, mode );
         codeFile.close();
     }
+
+    /**
+     * Execute a program on the chosen engine.
+     * @param code the assembled program
+     * @param useSwitch true for {@link SwitchEngine}, false for {@link Soros}
+     * @param fuse true to fuse common instruction sequences first
+     *             (this only helps {@link Soros}, since the
+     *             {@link SwitchEngine} decodes them back into their parts)
+     * @param mode null for an ordinary run, {@link #PROFILE_OPTION}
+     *             or {@link #PROFILE_JSON_OPTION} to run on {@link Soros}
+     *             with profiling (whatever the other options say) and
+     *             show the profile in that form, or {@link #VERIFY_OPTION}
+     *             to only verify the code
+     */
+    private static void run( List< Soros.Instruction > code,
+                             boolean useSwitch, boolean fuse,
+                             String mode ) {
+        if ( fuse ) {
+            code = Superinstructions.optimize( code );
+        }
+        try {
+            // Malformed code is turned away before any of it runs.
+            int depth = verify( Superinstructions.expand( code ) );
+            if ( VERIFY_OPTION.equals( mode ) ) {
+                System.out.println( "Verified: maximum stack depth " +
+                                    depth );
+            }
+            else if ( mode != null ) {
+                SorosProfile result = new SorosProfile( PROFILE_GRAM_LENGTH );
+                Soros machine = new Soros();
+                machine.reserve( depth );
+                try {
+                    machine.execute( code, result );
+                }
+                finally {
+                    System.err.print( mode.equals( PROFILE_JSON_OPTION ) ?
+                            result.toJson() + System.lineSeparator() :
+                            result.toString() );
+                }
+            }
+            else if ( useSwitch ) {
+                new SwitchEngine().execute( code );
+            }
+            else {
+                Soros machine = new Soros();
+                machine.reserve( depth );
+                machine.execute( code );
+            }
+        }
+        catch ( DendronException error ) {
+            Errors.abort( error );
+        }
+    }
 }
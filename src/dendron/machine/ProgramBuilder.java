@@ -0,0 +1,112 @@
+package dendron.machine;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects Soros instructions as a compiler emits them, so that a
+ * program can go from a parse tree to running code without being
+ * written out as assembly language text and read back in.
+ * <p>
+ * As in {@link SorosImage#load}, instructions without operands, and the
+ * LOAD and STORE instructions for each variable, are created once and
+ * shared.
+ *
+ * @author RIT CS
+ */
+public class ProgramBuilder {
+
+    private Soros.Instruction[] code = new Soros.Instruction[ 64 ];
+    private int size = 0;
+
+    private final Map< String, Soros.Load > loads = new HashMap<>();
+    private final Map< String, Soros.Store > stores = new HashMap<>();
+
+    private final Soros.Instruction add = new Soros.Add();
+    private final Soros.Instruction subtract = new Soros.Subtract();
+    private final Soros.Instruction multiply = new Soros.Multiply();
+    private final Soros.Instruction divide = new Soros.Divide();
+    private final Soros.Instruction negate = new Soros.Negate();
+    private final Soros.Instruction squareRoot = new Soros.SquareRoot();
+    private final Soros.Instruction print = new Soros.Print();
+
+    private ProgramBuilder emit( Soros.Instruction instr ) {
+        if ( this.size == this.code.length ) {
+            this.code = Arrays.copyOf( this.code, this.size * 2 );
+        }
+        this.code[ this.size++ ] = instr;
+        return this;
+    }
+
+    /**
+     * Emit PUSH.
+     * @param constant the value to push
+     * @return this builder
+     */
+    public ProgramBuilder push( int constant ) {
+        return this.emit( new Soros.PushConst( constant ) );
+    }
+
+    /**
+     * Emit LOAD.
+     * @param ident the variable to load
+     * @return this builder
+     */
+    public ProgramBuilder load( String ident ) {
+        return this.emit( this.loads.computeIfAbsent( ident, Soros.Load::new ) );
+    }
+
+    /**
+     * Emit STORE.
+     * @param ident the variable to store into
+     * @return this builder
+     */
+    public ProgramBuilder store( String ident ) {
+        return this.emit(
+                this.stores.computeIfAbsent( ident, Soros.Store::new ) );
+    }
+
+    public ProgramBuilder add() {
+        return this.emit( this.add );
+    }
+
+    public ProgramBuilder subtract() {
+        return this.emit( this.subtract );
+    }
+
+    public ProgramBuilder multiply() {
+        return this.emit( this.multiply );
+    }
+
+    public ProgramBuilder divide() {
+        return this.emit( this.divide );
+    }
+
+    public ProgramBuilder negate() {
+        return this.emit( this.negate );
+    }
+
+    public ProgramBuilder squareRoot() {
+        return this.emit( this.squareRoot );
+    }
+
+    public ProgramBuilder print() {
+        return this.emit( this.print );
+    }
+
+    /**
+     * @return how many instructions have been emitted
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the instructions emitted so far, in order
+     */
+    public List< Soros.Instruction > build() {
+        return Arrays.asList( Arrays.copyOf( this.code, this.size ) );
+    }
+}
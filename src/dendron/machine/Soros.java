@@ -1,10 +1,14 @@
 package dendron.machine;
 
+import java.util.Arrays;
+import java.util.EmptyStackException;
 import java.util.List;
-import java.util.Stack;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.function.IntConsumer;
 import dendron.Errors;
+import dendron.OutputSink;
+import dendron.optimize.DagCompiler;
 
 /**
  * An abstraction of a computing machine that reads instructions
@@ -40,6 +44,41 @@ public class Soros {
 
     public final static String PRINT = "PRINT";
 
+    /**
+     * How many values the stack can hold before it has to grow
+     */
+    private final static int INITIAL_STACK_SIZE = 64;
+
+    /**
+     * How many values the stack holds at the start of a run
+     */
+    private int stackSize = INITIAL_STACK_SIZE;
+
+    /**
+     * The Soros instruction set. The order of the constants is
+     * the numbering used by the binary {@link SorosImage} format,
+     * so new opcodes must only ever be added at the end.
+     */
+    public enum Opcode {
+        PUSH( Soros.PUSH ), LOAD( Soros.LOAD ), STORE( Soros.STORE ),
+        ADD( Soros.ADD ), SUB( Soros.SUBTRACT ), MUL( Soros.MULTIPLY ),
+        DIV( Soros.DIVIDE ), NEG( Soros.NEGATE ), SQRT( Soros.SQUARE_ROOT ),
+        PRINT( Soros.PRINT );
+
+        private final String mnemonic;
+
+        Opcode( String mnemonic ) {
+            this.mnemonic = mnemonic;
+        }
+
+        /**
+         * @return the name of this operation in assembly language
+         */
+        public String mnemonic() {
+            return this.mnemonic;
+        }
+    }
+
     public static interface Instruction {
         /**
          * Run this instruction on the Machine, using the Machine's
@@ -56,11 +95,59 @@ public class Soros {
         String toString();
     }
 
+    /**
+     * One of the machine's own instructions, as opposed to one made by
+     * {@link Superinstructions} out of several of them. Anything that
+     * works on individual opcodes takes these, and gets them from a
+     * program with {@link Superinstructions#expand(List)}.
+     */
+    public static interface Primitive extends Instruction {
+        /**
+         * @return which operation this instruction performs
+         */
+        Opcode opcode();
+    }
+
     /**
      * This is the equivalent of a Python dict. It will be covered in week 5.
      */
     private Map< String, Integer > table = null;
 
+    /**
+     * Where the PRINT instruction sends its values, or null to send
+     * them to standard output through a new {@link OutputSink} for
+     * each run
+     */
+    private final IntConsumer printer;
+
+    /**
+     * Where the PRINT instruction sends its values during this run
+     */
+    private IntConsumer output = null;
+
+    /**
+     * Create a machine that prints to standard output.
+     */
+    public Soros() {
+        this.printer = null;
+    }
+
+    /**
+     * Create a machine that sends what it prints somewhere else.
+     * @param printer receives the value of each PRINT instruction
+     */
+    public Soros( IntConsumer printer ) {
+        this.printer = printer;
+    }
+
+    /**
+     * Output a value for the PRINT instruction.
+     * @param value the value printed
+     */
+    public void print( int value ) {
+        this.output.accept( value );
+    }
+
     public void setVar( String var, int value ) {
         this.table.put( var, value );
     }
@@ -73,14 +160,78 @@ public class Soros {
         return this.table.get( var );
     }
 
-    Stack< Integer > stack = null;
+    /**
+     * @return the symbol table as the last program run left it
+     *         (empty if no program has been run)
+     */
+    public Map< String, Integer > variables() {
+        return this.table == null ? Map.of() : this.table;
+    }
+
+    /**
+     * The value stack. It is a plain growable array of ints so that
+     * pushing and popping never boxes a value or takes a lock.
+     * Only the first {@link #sp} entries are in use.
+     */
+    int[] stack = null;
+
+    int sp = 0;
 
     public void push( int value ) {
-        this.stack.push( value );
+        if ( this.sp == this.stack.length ) {
+            this.stack = Arrays.copyOf( this.stack, this.sp * 2 );
+        }
+        this.stack[ this.sp++ ] = value;
     }
 
+    /**
+     * Take the top value off the stack.
+     * @return the value that was on top
+     * @throws EmptyStackException if the stack is empty
+     */
     public int pop() {
-        return this.stack.pop();
+        if ( this.sp == 0 ) {
+            throw new EmptyStackException();
+        }
+        return this.stack[ --this.sp ];
+    }
+
+    /**
+     * Take the top value off the stack, as the instructions do while a
+     * program runs. There is no check here that the stack has a value:
+     * code checked by {@link InstructionReader#verify(List)} cannot
+     * underflow. For any other code, popping an empty stack leaves sp
+     * negative, and the run loops turn the bad index that follows into
+     * an {@link EmptyStackException}.
+     * @return the value that was on top
+     */
+    int popUnchecked() {
+        return this.stack[ --this.sp ];
+    }
+
+    /**
+     * Decide what a bad array index in a run loop means. Popping an
+     * empty stack leaves {@link #sp} below zero; anything else, such as
+     * an exception from a printer, is passed on unchanged.
+     * @param e the exception the loop caught
+     * @return the exception to throw in its place
+     */
+    private RuntimeException translate( ArrayIndexOutOfBoundsException e ) {
+        if ( this.sp < 0 ) {
+            this.sp = 0;
+            return new EmptyStackException();
+        }
+        return e;
+    }
+
+    /**
+     * Make the stack big enough from the start for a program that
+     * needs no more than a given depth, so that it never has to grow.
+     * @param depth the program's maximum stack depth, as found by
+     *              {@link InstructionReader#verify(List)}
+     */
+    public void reserve( int depth ) {
+        this.stackSize = Math.max( depth, 1 );
     }
 
     /**
@@ -88,10 +239,87 @@ public class Soros {
      * @see Soros#execute
      */
     private void reset() {
-        this.stack = new Stack<>();
+        this.stack = new int[ this.stackSize ];
+        this.sp = 0;
         this.table = new HashMap<>();
     }
 
+    /**
+     * Run a "compiled" program quietly: nothing is shown except what
+     * the program itself prints.
+     * @param program a list of Soros instructions
+     * @return the final symbol table
+     */
+    public Map< String, Integer > run( List< Instruction > program ) {
+        if ( this.printer != null ) {
+            return this.run( program, this.printer );
+        }
+        OutputSink out = OutputSink.standardOutput();
+        try {
+            return this.run( program, out );
+        }
+        finally {
+            out.flush();
+        }
+    }
+
+    private Map< String, Integer > run( List< Instruction > program,
+                                        IntConsumer output ) {
+        this.reset();
+        this.output = output;
+        try {
+            for ( Instruction instr: program ) {
+                instr.execute( this );
+            }
+        }
+        catch( ArrayIndexOutOfBoundsException underflow ) {
+            throw this.translate( underflow );
+        }
+        return this.table;
+    }
+
+    /**
+     * Run a "compiled" program quietly, as {@link #run(List)} does,
+     * while recording what it does. This is a separate loop, so an
+     * ordinary run pays nothing for profiling.
+     * @param program a list of Soros instructions
+     * @param profile where to record the run; if the program fails,
+     *                it holds what ran before the error
+     * @return the final symbol table
+     */
+    public Map< String, Integer > run( List< Instruction > program,
+                                       SorosProfile profile ) {
+        if ( this.printer != null ) {
+            return this.profile( program, this.printer, profile );
+        }
+        OutputSink out = OutputSink.standardOutput();
+        try {
+            return this.profile( program, out, profile );
+        }
+        finally {
+            out.flush();
+        }
+    }
+
+    private Map< String, Integer > profile( List< Instruction > program,
+                                            IntConsumer output,
+                                            SorosProfile profile ) {
+        this.reset();
+        this.output = output;
+        try {
+            for ( Primitive instr: Superinstructions.expand( program ) ) {
+                long start = System.nanoTime();
+                instr.execute( this );
+                long elapsed = System.nanoTime() - start;
+                profile.record( instr, elapsed, this.sp );
+            }
+        }
+        catch( ArrayIndexOutOfBoundsException underflow ) {
+            throw this.translate( underflow );
+        }
+        return this.table;
+    }
+
     /**
      * Run a "compiled" program by executing, in order, each instruction
      * contained therein.
@@ -100,16 +328,57 @@ public class Soros {
      * @param program a list of Soros instructions
      */
     public void execute( List< Instruction > program ) {
-        this.reset();
-        System.out.println("Executing compiled code...");
-        for ( Instruction instr: program ) {
-            instr.execute( this );
+        OutputSink out = OutputSink.standardOutput();
+        try {
+            out.println( "Executing compiled code..." );
+            if ( this.printer != null ) {
+                // The printer writes on its own, so what comes
+                // before its output must be out already.
+                out.flush();
+            }
+            this.run( program, this.printer != null ? this.printer : out );
+            this.report( out );
+        }
+        finally {
+            out.flush();
+        }
+    }
+
+    /**
+     * Run a "compiled" program, with the same output as
+     * {@link #execute(List)}, while recording what it does.
+     * @param program a list of Soros instructions
+     * @param profile where to record the run; if the program fails,
+     *                it holds what ran before the error
+     * @see #run(List, SorosProfile)
+     */
+    public void execute( List< Instruction > program, SorosProfile profile ) {
+        OutputSink out = OutputSink.standardOutput();
+        try {
+            out.println( "Executing compiled code..." );
+            if ( this.printer != null ) {
+                out.flush();
+            }
+            this.profile( program, this.printer != null ? this.printer : out,
+                          profile );
+            this.report( out );
+        }
+        finally {
+            out.flush();
         }
-        System.out.println( "Soros: execution ended with " +
-                            stack.size() + " items left on the stack." );
-        System.out.println();
-        Errors.dump( table );
-        System.out.println();
+    }
+
+    /**
+     * Show the final size of the stack and the symbol table, leaving
+     * out any temporaries the code was compiled with.
+     */
+    private void report( OutputSink out ) {
+        out.println( "Soros: execution ended with " +
+                     this.sp + " items left on the stack." );
+        out.println();
+        Errors.dump( table, out,
+                     ident -> !DagCompiler.isTemporary( ident ) );
+        out.println();
     }
 
 // ===========================================================================
@@ -118,73 +387,108 @@ public class Soros {
  * Nested classes for each Soros instruction
  */
 
-    public static class PushConst implements Instruction {
+    public static class PushConst implements Primitive {
         private int value;
 
         public PushConst( int constant ) {
             this.value = constant;
         }
 
+        /**
+         * @return the constant this instruction pushes
+         */
+        public int getValue() {
+            return this.value;
+        }
+
         @Override
         public void execute( Soros m ) {
             m.push( this.value );
         }
 
+        @Override
+        public Opcode opcode() {
+            return Opcode.PUSH;
+        }
+
         @Override
         public String toString() {
             return "PUSH  " + this.value;
         }
     }
 
-    public static class Print implements Instruction {
+    public static class Print implements Primitive {
         public Print() {}
 
         /**
-         * Output "*** " followed by the value popped from the stack.
+         * Send the value popped from the stack to the machine's printer,
+         * which normally shows it after "=== ".
          */
         @Override
         public void execute( Soros m ) {
-            System.out.println( "=== " + m.pop() );
+            m.print( m.popUnchecked() );
+        }
+
+        @Override
+        public Opcode opcode() {
+            return Opcode.PRINT;
         }
 
         @Override
         public String toString() { return "PRINT"; }
     }
 
-    public static class Negate implements Instruction {
+    public static class Negate implements Primitive {
         @Override
         public void execute( Soros m ) {
-            int op = m.pop();
+            int op = m.popUnchecked();
             m.push( -op );
         }
 
+        @Override
+        public Opcode opcode() {
+            return Opcode.NEG;
+        }
+
         @Override
         public String toString() {
             return "NEG";
         }
     }
 
-    public static class Divide implements Instruction {
+    public static class Divide implements Primitive {
         @Override
         public void execute( Soros m ) {
-            int op2 = m.pop();
-            int op1 = m.pop();
+            int op2 = m.popUnchecked();
+            int op1 = m.popUnchecked();
             m.push( op1 / op2 );
         }
 
+        @Override
+        public Opcode opcode() {
+            return Opcode.DIV;
+        }
+
         @Override
         public String toString() {
             return "DIV";
         }
     }
 
-    public static class Load implements Instruction {
+    public static class Load implements Primitive {
         private String name;
 
         public Load( String ident ) {
             this.name = ident;
         }
 
+        /**
+         * @return the variable this instruction uses
+         */
+        public String getName() {
+            return this.name;
+        }
+
         @Override
         public void execute( Soros m ) {
             if ( !m.existsVar( this.name ) ) {
@@ -193,37 +497,52 @@ public class Soros {
             m.push( m.getVar( this.name ) );
         }
 
+        @Override
+        public Opcode opcode() {
+            return Opcode.LOAD;
+        }
+
         @Override
         public String toString() {
             return "LOAD  " + this.name;
         }
     }
 
-    public static class Multiply implements Instruction {
+    public static class Multiply implements Primitive {
         @Override
         public void execute( Soros m ) {
-            int op2 = m.pop();
-            int op1 = m.pop();
+            int op2 = m.popUnchecked();
+            int op1 = m.popUnchecked();
             m.push( op1 * op2 );
         }
 
+        @Override
+        public Opcode opcode() {
+            return Opcode.MUL;
+        }
+
         @Override
         public String toString() {
             return "MUL";
         }
     }
 
-    public static class Add implements Instruction {
+    public static class Add implements Primitive {
         /**
          * Run the microsteps for the ADD instruction.
          */
         @Override
         public void execute( Soros m ) {
-            int op2 = m.pop();
-            int op1 = m.pop();
+            int op2 = m.popUnchecked();
+            int op1 = m.popUnchecked();
             m.push( op1 + op2 );
         }
 
+        @Override
+        public Opcode opcode() {
+            return Opcode.ADD;
+        }
+
         /**
          * Show the ADD instruction as plain text.
          *
@@ -235,29 +554,46 @@ public class Soros {
         }
     }
 
-    public static class SquareRoot implements Instruction {
+    public static class SquareRoot implements Primitive {
         @Override
         public void execute( Soros m ) {
-            double op = (double)m.pop();
+            double op = (double)m.popUnchecked();
             m.push( (int)Math.sqrt( op ) );
         }
 
+        @Override
+        public Opcode opcode() {
+            return Opcode.SQRT;
+        }
+
         @Override
         public String toString() {
             return "SQRT";
         }
     }
 
-    public static class Store implements Instruction {
+    public static class Store implements Primitive {
         private String name;
 
         public Store( String ident ) {
             this.name = ident;
         }
 
+        /**
+         * @return the variable this instruction uses
+         */
+        public String getName() {
+            return this.name;
+        }
+
         @Override
         public void execute( Soros m ) {
-            m.setVar( this.name, m.pop() );
+            m.setVar( this.name, m.popUnchecked() );
+        }
+
+        @Override
+        public Opcode opcode() {
+            return Opcode.STORE;
         }
 
         @Override
@@ -266,14 +602,19 @@ public class Soros {
         }
     }
 
-    public static class Subtract implements Instruction {
+    public static class Subtract implements Primitive {
         @Override
         public void execute( Soros m ) {
-            int op2 = m.pop();
-            int op1 = m.pop();
+            int op2 = m.popUnchecked();
+            int op1 = m.popUnchecked();
             m.push( op1 - op2 );
         }
 
+        @Override
+        public Opcode opcode() {
+            return Opcode.SUB;
+        }
+
         @Override
         public String toString() {
             return "SUB";
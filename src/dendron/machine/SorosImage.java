@@ -0,0 +1,246 @@
+package dendron.machine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary container for Soros programs, so that they can be
+ * loaded without reading and splitting assembly language text.
+ * <p>
+ * All numbers are big-endian. An image is laid out as
+ * <ol>
+ *     <li>the magic number {@link #MAGIC} (4 bytes)</li>
+ *     <li>the number of identifiers in the pool (4 bytes)</li>
+ *     <li>each identifier, as a 2-byte length followed by
+ *         that many bytes of UTF-8</li>
+ *     <li>the number of instructions (4 bytes)</li>
+ *     <li>the instructions, each an {@link Soros.Opcode} number
+ *         (1 byte), followed for PUSH by the constant (4 bytes) and for
+ *         LOAD and STORE by the identifier's index in the pool (4 bytes)</li>
+ * </ol>
+ * Images are loaded through a memory-mapped file, so the file's bytes
+ * are decoded in place rather than copied into the Java heap first.
+ *
+ * @author RIT CS
+ */
+public class SorosImage {
+
+    /**
+     * The first four bytes of every image: "SOR" and a format version
+     */
+    public static final int MAGIC = 0x534F5201;
+
+    private static final Soros.Opcode[] OPCODES = Soros.Opcode.values();
+
+    /**
+     * Write a program out as a binary image. A program with fused
+     * instructions is saved as their parts, by writing out what
+     * {@link Superinstructions#expand(List)} gives back for it.
+     * @param program the instructions to save
+     * @param file where to put the image (replaced if it exists)
+     * @throws IOException if the file cannot be written
+     */
+    public static void write( List< Soros.Primitive > program, Path file )
+            throws IOException {
+        Map< String, Integer > poolIndex = new HashMap<>();
+        List< byte[] > pool = new ArrayList<>();
+        int poolBytes = 0;
+        int codeBytes = 0;
+        for ( Soros.Primitive instr: program ) {
+            codeBytes += 1;
+            switch ( instr.opcode() ) {
+                case PUSH -> codeBytes += Integer.BYTES;
+                case LOAD, STORE -> {
+                    codeBytes += Integer.BYTES;
+                    String name = nameOf( instr );
+                    if ( !poolIndex.containsKey( name ) ) {
+                        byte[] utf8 = name.getBytes( StandardCharsets.UTF_8 );
+                        if ( utf8.length > 0xFFFF ) {
+                            throw new IOException(
+                                    "identifier too long: " + name );
+                        }
+                        poolIndex.put( name, pool.size() );
+                        pool.add( utf8 );
+                        poolBytes += Short.BYTES + utf8.length;
+                    }
+                }
+                default -> {}
+            }
+        }
+
+        ByteBuffer image = ByteBuffer.allocate(
+                3 * Integer.BYTES + poolBytes + codeBytes );
+        image.putInt( MAGIC );
+        image.putInt( pool.size() );
+        for ( byte[] utf8: pool ) {
+            image.putShort( (short)utf8.length );
+            image.put( utf8 );
+        }
+        image.putInt( program.size() );
+        for ( Soros.Primitive instr: program ) {
+            image.put( (byte)instr.opcode().ordinal() );
+            switch ( instr.opcode() ) {
+                case PUSH -> image.putInt(
+                        ( (Soros.PushConst)instr ).getValue() );
+                case LOAD, STORE -> image.putInt(
+                        poolIndex.get( nameOf( instr ) ) );
+                default -> {}
+            }
+        }
+        image.flip();
+
+        try ( FileChannel out = FileChannel.open( file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING ) ) {
+            while ( image.hasRemaining() ) {
+                out.write( image );
+            }
+        }
+    }
+
+    /**
+     * Check whether a file starts with the image magic number.
+     * @param file the file to look at
+     * @return true if the file looks like a Soros image
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isImage( Path file ) throws IOException {
+        try ( FileChannel in = FileChannel.open( file ) ) {
+            ByteBuffer start = ByteBuffer.allocate( Integer.BYTES );
+            while ( start.hasRemaining() && in.read( start ) >= 0 ) {}
+            return !start.hasRemaining() && start.getInt( 0 ) == MAGIC;
+        }
+    }
+
+    /**
+     * Map an image file into memory and decode its instructions.
+     * Instructions without operands, and the LOAD and STORE instructions
+     * for each pool entry, are created once and shared.
+     * @param file the image to load
+     * @return the program, ready to execute
+     * @throws IOException if the file cannot be read or is not an image
+     */
+    public static List< Soros.Instruction > load( Path file )
+            throws IOException {
+        MappedByteBuffer image;
+        try ( FileChannel in = FileChannel.open( file ) ) {
+            image = in.map( FileChannel.MapMode.READ_ONLY, 0, in.size() );
+        }
+        try {
+            return decode( image );
+        }
+        catch( RuntimeException re ) {
+            throw new IOException( "malformed Soros image " + file, re );
+        }
+    }
+
+    /**
+     * Decode the instructions in an image. Every count, length, opcode
+     * and pool index is checked against what the image can hold before
+     * it is used, so a damaged file cannot make the loader allocate
+     * without bound or index outside its tables.
+     * @param image the bytes of the image, positioned at the magic number
+     * @return the program, ready to execute
+     * @throws IOException if the bytes are not an image
+     */
+    private static List< Soros.Instruction > decode( ByteBuffer image )
+            throws IOException {
+        need( image, Integer.BYTES );
+        if ( image.getInt() != MAGIC ) {
+            throw notAnImage();
+        }
+        need( image, Integer.BYTES );
+        int poolSize = image.getInt();
+        // Every pool entry takes at least its 2-byte length.
+        if ( poolSize < 0 || poolSize > image.remaining() / Short.BYTES ) {
+            throw notAnImage();
+        }
+        Soros.Load[] loads = new Soros.Load[ poolSize ];
+        Soros.Store[] stores = new Soros.Store[ poolSize ];
+        for ( int i = 0; i < poolSize; ++i ) {
+            need( image, Short.BYTES );
+            int length = Short.toUnsignedInt( image.getShort() );
+            need( image, length );
+            String name = StandardCharsets.UTF_8.decode(
+                    image.slice( image.position(), length ) ).toString();
+            image.position( image.position() + length );
+            loads[ i ] = new Soros.Load( name );
+            stores[ i ] = new Soros.Store( name );
+        }
+
+        Soros.Instruction[] simple = new Soros.Instruction[ OPCODES.length ];
+        simple[ Soros.Opcode.ADD.ordinal() ] = new Soros.Add();
+        simple[ Soros.Opcode.SUB.ordinal() ] = new Soros.Subtract();
+        simple[ Soros.Opcode.MUL.ordinal() ] = new Soros.Multiply();
+        simple[ Soros.Opcode.DIV.ordinal() ] = new Soros.Divide();
+        simple[ Soros.Opcode.NEG.ordinal() ] = new Soros.Negate();
+        simple[ Soros.Opcode.SQRT.ordinal() ] = new Soros.SquareRoot();
+        simple[ Soros.Opcode.PRINT.ordinal() ] = new Soros.Print();
+
+        need( image, Integer.BYTES );
+        int count = image.getInt();
+        // Every instruction takes at least its opcode byte.
+        if ( count < 0 || count > image.remaining() ) {
+            throw notAnImage();
+        }
+        List< Soros.Instruction > program = new ArrayList<>( count );
+        for ( int i = 0; i < count; ++i ) {
+            need( image, 1 );
+            int code = Byte.toUnsignedInt( image.get() );
+            if ( code >= OPCODES.length ) {
+                throw notAnImage();
+            }
+            Soros.Opcode op = OPCODES[ code ];
+            switch ( op ) {
+                case PUSH -> {
+                    need( image, Integer.BYTES );
+                    program.add( new Soros.PushConst( image.getInt() ) );
+                }
+                case LOAD -> program.add( loads[ poolIndex( image, poolSize ) ] );
+                case STORE ->
+                        program.add( stores[ poolIndex( image, poolSize ) ] );
+                default -> program.add( simple[ op.ordinal() ] );
+            }
+        }
+        return program;
+    }
+
+    private static int poolIndex( ByteBuffer image, int poolSize )
+            throws IOException {
+        need( image, Integer.BYTES );
+        int index = image.getInt();
+        if ( index < 0 || index >= poolSize ) {
+            throw notAnImage();
+        }
+        return index;
+    }
+
+    /**
+     * Make sure the image has some more bytes left.
+     * @throws IOException if it has run out
+     */
+    private static void need( ByteBuffer image, int bytes )
+            throws IOException {
+        if ( image.remaining() < bytes ) {
+            throw notAnImage();
+        }
+    }
+
+    private static IOException notAnImage() {
+        return new IOException( "not a Soros image" );
+    }
+
+    private static String nameOf( Soros.Instruction instr ) {
+        return instr instanceof Soros.Load load ?
+                load.getName() : ( (Soros.Store)instr ).getName();
+    }
+}
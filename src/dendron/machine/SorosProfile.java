@@ -0,0 +1,282 @@
+package dendron.machine;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a profiled run of a Soros program did: how many times each opcode
+ * ran and how long it took in total, how deep the stack got, how often
+ * each variable was loaded and stored, and which sequences of opcodes
+ * (n-grams) ran most often. Fill one in with
+ * {@link Soros#run(List, SorosProfile)} or
+ * {@link Soros#execute(List, SorosProfile)}, then show it with
+ * {@link #toString()} or {@link #toJson()}.
+ * <p>
+ * Each instruction is timed separately, so the times include the cost
+ * of reading the clock and are best used to compare opcodes with each
+ * other. Fused instructions are profiled as the instructions they were
+ * made from.
+ *
+ * @author RIT CS
+ */
+public class SorosProfile {
+
+    /**
+     * How many of the hottest n-grams the reports show
+     */
+    public static final int HOTTEST = 10;
+
+    /**
+     * The longest n-gram that can be counted
+     */
+    public static final int LONGEST_GRAM = 15;
+
+    private static final Soros.Opcode[] OPCODES = Soros.Opcode.values();
+
+    /**
+     * Each opcode takes four bits of an n-gram's key, with 0 meaning
+     * "nothing ran yet".
+     */
+    private static final int BITS_PER_OPCODE = 4;
+
+    private final int gramLength;
+    private final long gramMask;
+    private long gram = 0;
+
+    private final long[] counts = new long[ OPCODES.length ];
+    private final long[] nanos = new long[ OPCODES.length ];
+    private long instructions = 0;
+    private int maxDepth = 0;
+    private final Map< String, long[] > variables = new LinkedHashMap<>();
+    private final Map< Long, long[] > grams = new HashMap<>();
+
+    /**
+     * Start an empty profile.
+     * @param gramLength how many opcodes in a row make up an n-gram,
+     *                   from 1 to {@link #LONGEST_GRAM}
+     */
+    public SorosProfile( int gramLength ) {
+        if ( gramLength < 1 || gramLength > LONGEST_GRAM ) {
+            throw new IllegalArgumentException(
+                    "n-gram length must be from 1 to " + LONGEST_GRAM );
+        }
+        this.gramLength = gramLength;
+        this.gramMask = ( 1L << ( BITS_PER_OPCODE * gramLength ) ) - 1;
+    }
+
+    /**
+     * Record one instruction that has just run.
+     * @param instr the instruction
+     * @param elapsed how long it took, in nanoseconds
+     * @param depth how many values are on the stack now
+     */
+    void record( Soros.Primitive instr, long elapsed, int depth ) {
+        int op = instr.opcode().ordinal();
+        this.counts[ op ]++;
+        this.nanos[ op ] += elapsed;
+        this.maxDepth = Math.max( this.maxDepth, depth );
+        if ( instr instanceof Soros.Load load ) {
+            variable( load.getName() )[ 0 ]++;
+        }
+        else if ( instr instanceof Soros.Store store ) {
+            variable( store.getName() )[ 1 ]++;
+        }
+        this.gram = ( ( this.gram << BITS_PER_OPCODE ) | ( op + 1 ) ) &
+                    this.gramMask;
+        if ( ++this.instructions >= this.gramLength ) {
+            this.grams.computeIfAbsent( this.gram, g -> new long[ 1 ] )[ 0 ]++;
+        }
+    }
+
+    private long[] variable( String name ) {
+        return this.variables.computeIfAbsent( name, n -> new long[ 2 ] );
+    }
+
+    /**
+     * @return how many instructions ran
+     */
+    public long instructions() {
+        return this.instructions;
+    }
+
+    /**
+     * @param opcode an operation
+     * @return how many times it ran
+     */
+    public long count( Soros.Opcode opcode ) {
+        return this.counts[ opcode.ordinal() ];
+    }
+
+    /**
+     * @param opcode an operation
+     * @return the total time spent running it, in nanoseconds
+     */
+    public long nanos( Soros.Opcode opcode ) {
+        return this.nanos[ opcode.ordinal() ];
+    }
+
+    /**
+     * @return the most values that were ever on the stack at once
+     */
+    public int maxStackDepth() {
+        return this.maxDepth;
+    }
+
+    /**
+     * @param name a variable
+     * @return how many times it was loaded
+     */
+    public long loads( String name ) {
+        long[] uses = this.variables.get( name );
+        return uses == null ? 0 : uses[ 0 ];
+    }
+
+    /**
+     * @param name a variable
+     * @return how many times it was stored
+     */
+    public long stores( String name ) {
+        long[] uses = this.variables.get( name );
+        return uses == null ? 0 : uses[ 1 ];
+    }
+
+    /**
+     * @return the n-grams that ran most often, most often first,
+     *         each with the number of times it ran
+     */
+    public List< Map.Entry< List< Soros.Opcode >, Long > > hottest() {
+        List< Map.Entry< Long, long[] > > sorted =
+                new ArrayList<>( this.grams.entrySet() );
+        sorted.sort( Comparator.comparingLong(
+                ( Map.Entry< Long, long[] > e ) -> -e.getValue()[ 0 ] )
+                .thenComparingLong( Map.Entry::getKey ) );
+        List< Map.Entry< List< Soros.Opcode >, Long > > result =
+                new ArrayList<>();
+        for ( Map.Entry< Long, long[] > e:
+                sorted.subList( 0, Math.min( HOTTEST, sorted.size() ) ) ) {
+            result.add( Map.entry( decode( e.getKey() ), e.getValue()[ 0 ] ) );
+        }
+        return result;
+    }
+
+    private List< Soros.Opcode > decode( long key ) {
+        List< Soros.Opcode > ops = new ArrayList<>();
+        for ( int i = this.gramLength - 1; i >= 0; --i ) {
+            int op = (int)( key >>> ( BITS_PER_OPCODE * i ) ) & 0xF;
+            ops.add( OPCODES[ op - 1 ] );
+        }
+        return ops;
+    }
+
+    /**
+     * Show the profile as a table that a person can read.
+     * @return the report, several lines long
+     */
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        out.append( String.format( "Soros profile: %d instructions, " +
+                                   "max stack depth %d%n",
+                                   this.instructions, this.maxDepth ) );
+        out.append( String.format( "%n%-6s %12s %7s %14s %9s%n",
+                                   "opcode", "count", "%", "total ns",
+                                   "ns each" ) );
+        for ( Soros.Opcode op: OPCODES ) {
+            long count = this.counts[ op.ordinal() ];
+            if ( count == 0 ) continue;
+            long ns = this.nanos[ op.ordinal() ];
+            out.append( String.format( "%-6s %12d %6.2f%% %14d %9.1f%n",
+                                       op.mnemonic(), count,
+                                       100.0 * count / this.instructions,
+                                       ns, (double)ns / count ) );
+        }
+        if ( !this.variables.isEmpty() ) {
+            out.append( String.format( "%n%-12s %12s %12s%n",
+                                       "variable", "loads", "stores" ) );
+            for ( Map.Entry< String, long[] > v: this.variables.entrySet() ) {
+                out.append( String.format( "%-12s %12d %12d%n", v.getKey(),
+                                           v.getValue()[ 0 ],
+                                           v.getValue()[ 1 ] ) );
+            }
+        }
+        List< Map.Entry< List< Soros.Opcode >, Long > > hot = hottest();
+        if ( !hot.isEmpty() ) {
+            out.append( String.format( "%nHottest %d-grams%n",
+                                       this.gramLength ) );
+            for ( Map.Entry< List< Soros.Opcode >, Long > g: hot ) {
+                StringBuilder ops = new StringBuilder();
+                for ( Soros.Opcode op: g.getKey() ) {
+                    ops.append( op.mnemonic() ).append( ' ' );
+                }
+                out.append( String.format( "%12d  %s%n", g.getValue(),
+                                           ops.toString().strip() ) );
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Show the profile as a JSON object, for other tools to read.
+     * @return the report, on one line
+     */
+    public String toJson() {
+        StringBuilder out = new StringBuilder( "{" );
+        out.append( "\"instructions\":" ).append( this.instructions );
+        out.append( ",\"maxStackDepth\":" ).append( this.maxDepth );
+        out.append( ",\"opcodes\":{" );
+        String comma = "";
+        for ( Soros.Opcode op: OPCODES ) {
+            if ( this.counts[ op.ordinal() ] == 0 ) continue;
+            out.append( comma ).append( '"' ).append( op.mnemonic() )
+               .append( "\":{\"count\":" ).append( this.counts[ op.ordinal() ] )
+               .append( ",\"nanos\":" ).append( this.nanos[ op.ordinal() ] )
+               .append( '}' );
+            comma = ",";
+        }
+        out.append( "},\"variables\":{" );
+        comma = "";
+        for ( Map.Entry< String, long[] > v: this.variables.entrySet() ) {
+            out.append( comma );
+            quote( out, v.getKey() );
+            out.append( ":{\"loads\":" ).append( v.getValue()[ 0 ] )
+               .append( ",\"stores\":" ).append( v.getValue()[ 1 ] )
+               .append( '}' );
+            comma = ",";
+        }
+        out.append( "},\"hottest\":[" );
+        comma = "";
+        for ( Map.Entry< List< Soros.Opcode >, Long > g: hottest() ) {
+            out.append( comma ).append( "{\"ops\":[" );
+            String opComma = "";
+            for ( Soros.Opcode op: g.getKey() ) {
+                out.append( opComma ).append( '"' ).append( op.mnemonic() )
+                   .append( '"' );
+                opComma = ",";
+            }
+            out.append( "],\"count\":" ).append( g.getValue() ).append( '}' );
+            comma = ",";
+        }
+        return out.append( "]}" ).toString();
+    }
+
+    private static void quote( StringBuilder out, String text ) {
+        out.append( '"' );
+        for ( int i = 0; i < text.length(); ++i ) {
+            char c = text.charAt( i );
+            if ( c == '"' || c == '\\' ) {
+                out.append( '\\' ).append( c );
+            }
+            else if ( c < 0x20 ) {
+                out.append( String.format( "\\u%04x", (int)c ) );
+            }
+            else {
+                out.append( c );
+            }
+        }
+        out.append( '"' );
+    }
+}
@@ -0,0 +1,370 @@
+package dendron.machine;
+
+import dendron.Errors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fuse common runs of Soros instructions into single instructions, so
+ * that {@link Soros#execute(List)} makes fewer calls and moves fewer
+ * values through the stack.
+ * <p>
+ * Four shapes of run can be fused, where <i>op</i> is any of ADD, SUB,
+ * MUL or DIV:
+ * <ul>
+ *     <li>LOAD LOAD <i>op</i></li>
+ *     <li>LOAD <i>op</i></li>
+ *     <li>PUSH <i>op</i></li>
+ *     <li><i>op</i> STORE</li>
+ * </ul>
+ * Which of the possible opcode sequences are actually fused is not fixed
+ * here. It is chosen by {@link #select(Map, int)} from a {@link #profile}
+ * of real programs, so that the fused instructions match the code
+ * the compiler really produces.
+ *
+ * @author RIT CS
+ */
+public class Superinstructions {
+
+    /**
+     * How many patterns {@link #optimize(List)} will fuse
+     */
+    public static final int DEFAULT_PATTERN_COUNT = 8;
+
+    private static final int LONGEST = 3;
+
+    /**
+     * Count how often each fusable opcode sequence appears in some programs.
+     * @param programs the sample of programs to look at
+     * @return for each fusable sequence found, the number of times it
+     *         appears (overlapping appearances are all counted)
+     */
+    public static Map< List< Soros.Opcode >, Long > profile(
+            Collection< List< Soros.Instruction > > programs ) {
+        Map< List< Soros.Opcode >, Long > counts = new HashMap<>();
+        for ( List< Soros.Instruction > program: programs ) {
+            Soros.Opcode[] ops = opcodes( program );
+            for ( int start = 0; start < ops.length; ++start ) {
+                for ( int length = 2; length <= LONGEST &&
+                                      start + length <= ops.length; ++length ) {
+                    List< Soros.Opcode > gram = gram( ops, start, length );
+                    if ( isFusable( gram ) ) {
+                        counts.merge( gram, 1L, Long::sum );
+                    }
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Choose the patterns worth fusing. Each pattern is scored by
+     * the number of dispatches it would save: how often it appears
+     * times one less than its length.
+     * @param profile counts from {@link #profile(Collection)}
+     * @param limit the most patterns to choose
+     * @return the chosen patterns, best first
+     */
+    public static Set< List< Soros.Opcode > > select(
+            Map< List< Soros.Opcode >, Long > profile, int limit ) {
+        Comparator< Map.Entry< List< Soros.Opcode >, Long > > bySavings =
+                Comparator.comparingLong(
+                        e -> e.getValue() * ( e.getKey().size() - 1 ) );
+        Set< List< Soros.Opcode > > chosen = new LinkedHashSet<>();
+        profile.entrySet().stream()
+               .sorted( bySavings.reversed() )
+               .limit( limit )
+               .forEach( e -> chosen.add( e.getKey() ) );
+        return chosen;
+    }
+
+    /**
+     * Profile a single program and fuse its own most common patterns.
+     * @param program the instructions to improve
+     * @return the fused program
+     */
+    public static List< Soros.Instruction > optimize(
+            List< Soros.Instruction > program ) {
+        return fuse( program, select( profile( List.of( program ) ),
+                                      DEFAULT_PATTERN_COUNT ) );
+    }
+
+    /**
+     * Replace runs of instructions that match one of the patterns with
+     * a single fused instruction. The program is scanned from front to
+     * back, and at each point the longest matching pattern wins.
+     * @param program the instructions to improve
+     * @param patterns the opcode sequences to fuse; sequences that are
+     *                 not one of the fusable shapes are ignored
+     * @return the fused program
+     */
+    public static List< Soros.Instruction > fuse(
+            List< Soros.Instruction > program,
+            Set< List< Soros.Opcode > > patterns ) {
+        Soros.Instruction[] code =
+                program.toArray( new Soros.Instruction[ 0 ] );
+        Soros.Opcode[] ops = opcodes( program );
+        List< Soros.Instruction > result = new ArrayList<>( code.length );
+        int pc = 0;
+        while ( pc < code.length ) {
+            int length = Math.min( LONGEST, code.length - pc );
+            while ( length >= 2 ) {
+                List< Soros.Opcode > gram = gram( ops, pc, length );
+                if ( patterns.contains( gram ) && isFusable( gram ) ) {
+                    break;
+                }
+                --length;
+            }
+            if ( length >= 2 ) {
+                result.add( fused( code, pc, length ) );
+                pc += length;
+            }
+            else {
+                result.add( code[ pc ] );
+                ++pc;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Undo fusion, giving back the plain instructions. This is needed
+     * by anything that works on individual opcodes, such as
+     * {@link DecodedProgram} and {@link SorosImage}.
+     * @param program a program that may contain fused instructions
+     * @return the program itself if it has none, otherwise a copy
+     *         with each fused instruction replaced by its parts
+     * @throws IllegalArgumentException if an instruction is neither
+     *         one of the machine's own nor a fused one
+     */
+    @SuppressWarnings( "unchecked" )
+    public static List< Soros.Primitive > expand(
+            List< ? extends Soros.Instruction > program ) {
+        boolean anyFused = false;
+        for ( Soros.Instruction instr: program ) {
+            if ( instr instanceof Fused ) {
+                anyFused = true;
+            }
+            else if ( !( instr instanceof Soros.Primitive ) ) {
+                throw new IllegalArgumentException(
+                        "not a Soros instruction: " + instr );
+            }
+        }
+        if ( !anyFused ) {
+            // Every element was just checked to be primitive.
+            return (List< Soros.Primitive >)program;
+        }
+        List< Soros.Primitive > result = new ArrayList<>();
+        for ( Soros.Instruction instr: program ) {
+            if ( instr instanceof Fused fused ) {
+                result.addAll( fused.parts() );
+            }
+            else {
+                result.add( (Soros.Primitive)instr );
+            }
+        }
+        return result;
+    }
+
+    private static Soros.Opcode[] opcodes( List< Soros.Instruction > program ) {
+        Soros.Opcode[] ops = new Soros.Opcode[ program.size() ];
+        int i = 0;
+        for ( Soros.Instruction instr: program ) {
+            ops[ i++ ] = instr instanceof Soros.Primitive primitive ?
+                    primitive.opcode() : null;
+        }
+        return ops;
+    }
+
+    private static List< Soros.Opcode > gram( Soros.Opcode[] ops,
+                                              int start, int length ) {
+        return Arrays.asList( Arrays.copyOfRange( ops, start, start + length ) );
+    }
+
+    private static boolean isBinary( Soros.Opcode op ) {
+        return op == Soros.Opcode.ADD || op == Soros.Opcode.SUB ||
+               op == Soros.Opcode.MUL || op == Soros.Opcode.DIV;
+    }
+
+    private static boolean isFusable( List< Soros.Opcode > ops ) {
+        if ( ops.contains( null ) ) {
+            return false;
+        }
+        Soros.Opcode first = ops.get( 0 );
+        Soros.Opcode second = ops.get( 1 );
+        if ( ops.size() == 3 ) {
+            return first == Soros.Opcode.LOAD && second == Soros.Opcode.LOAD &&
+                   isBinary( ops.get( 2 ) );
+        }
+        return ( ( first == Soros.Opcode.LOAD || first == Soros.Opcode.PUSH ) &&
+                 isBinary( second ) ) ||
+               ( isBinary( first ) && second == Soros.Opcode.STORE );
+    }
+
+    private static Soros.Instruction fused( Soros.Instruction[] code,
+                                            int pc, int length ) {
+        // isFusable turned away anything that was already fused.
+        List< Soros.Primitive > parts = new ArrayList<>( length );
+        for ( int i = pc; i < pc + length; ++i ) {
+            parts.add( (Soros.Primitive)code[ i ] );
+        }
+        parts = List.copyOf( parts );
+        Soros.Primitive first = parts.get( 0 );
+        if ( length == 3 ) {
+            return new LoadLoadOp( parts, ( (Soros.Load)first ).getName(),
+                                   ( (Soros.Load)parts.get( 1 ) ).getName(),
+                                   parts.get( 2 ).opcode() );
+        }
+        Soros.Primitive second = parts.get( 1 );
+        if ( first instanceof Soros.Load load ) {
+            return new LoadOp( parts, load.getName(), second.opcode() );
+        }
+        if ( first instanceof Soros.PushConst push ) {
+            return new PushOp( parts, push.getValue(), second.opcode() );
+        }
+        return new OpStore( parts, first.opcode(),
+                            ( (Soros.Store)second ).getName() );
+    }
+
+    /**
+     * Carry out a binary operation the same way the single
+     * instructions do.
+     */
+    private static int apply( Soros.Opcode op, int op1, int op2 ) {
+        return switch ( op ) {
+            case ADD -> op1 + op2;
+            case SUB -> op1 - op2;
+            case MUL -> op1 * op2;
+            case DIV -> op1 / op2;
+            default -> throw new IllegalArgumentException( op.toString() );
+        };
+    }
+
+    private static int load( Soros m, String name ) {
+        if ( !m.existsVar( name ) ) {
+            Errors.report( Errors.Type.UNINITIALIZED, name );
+        }
+        return m.getVar( name );
+    }
+
+// ===========================================================================
+
+/*
+ * Nested classes for each fused instruction
+ */
+
+    /**
+     * The common part of all fused instructions: they remember the
+     * instructions they replaced. A fused instruction does the work of
+     * several opcodes, so it is not a {@link Soros.Primitive} and has no
+     * opcode of its own.
+     */
+    private static abstract class Fused implements Soros.Instruction {
+        private final List< Soros.Primitive > parts;
+
+        Fused( List< Soros.Primitive > parts ) {
+            this.parts = parts;
+        }
+
+        /**
+         * @return the instructions this one replaced, in order
+         */
+        List< Soros.Primitive > parts() {
+            return this.parts;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            for ( Soros.Primitive part: this.parts ) {
+                if ( text.length() > 0 ) {
+                    text.append( " ; " );
+                }
+                text.append( part );
+            }
+            return text.toString();
+        }
+    }
+
+    private static class LoadLoadOp extends Fused {
+        private final String name1;
+        private final String name2;
+        private final Soros.Opcode op;
+
+        LoadLoadOp( List< Soros.Primitive > parts,
+                    String name1, String name2, Soros.Opcode op ) {
+            super( parts );
+            this.name1 = name1;
+            this.name2 = name2;
+            this.op = op;
+        }
+
+        @Override
+        public void execute( Soros m ) {
+            int op1 = load( m, this.name1 );
+            int op2 = load( m, this.name2 );
+            m.push( apply( this.op, op1, op2 ) );
+        }
+    }
+
+    private static class LoadOp extends Fused {
+        private final String name;
+        private final Soros.Opcode op;
+
+        LoadOp( List< Soros.Primitive > parts,
+                String name, Soros.Opcode op ) {
+            super( parts );
+            this.name = name;
+            this.op = op;
+        }
+
+        @Override
+        public void execute( Soros m ) {
+            int op2 = load( m, this.name );
+            m.push( apply( this.op, m.popUnchecked(), op2 ) );
+        }
+    }
+
+    private static class PushOp extends Fused {
+        private final int value;
+        private final Soros.Opcode op;
+
+        PushOp( List< Soros.Primitive > parts, int value, Soros.Opcode op ) {
+            super( parts );
+            this.value = value;
+            this.op = op;
+        }
+
+        @Override
+        public void execute( Soros m ) {
+            m.push( apply( this.op, m.popUnchecked(), this.value ) );
+        }
+    }
+
+    private static class OpStore extends Fused {
+        private final Soros.Opcode op;
+        private final String name;
+
+        OpStore( List< Soros.Primitive > parts,
+                 Soros.Opcode op, String name ) {
+            super( parts );
+            this.op = op;
+            this.name = name;
+        }
+
+        @Override
+        public void execute( Soros m ) {
+            int op2 = m.popUnchecked();
+            int op1 = m.popUnchecked();
+            m.setVar( this.name, apply( this.op, op1, op2 ) );
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package dendron.machine;
+
+import dendron.Errors;
+import dendron.OutputSink;
+import dendron.optimize.DagCompiler;
+
+import java.util.Arrays;
+import java.util.EmptyStackException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static dendron.machine.DecodedProgram.*;
+
+/**
+ * An alternative way to run Soros programs. Instead of calling
+ * {@link Soros.Instruction#execute(Soros)} on one object per instruction,
+ * the program is decoded once into a {@link DecodedProgram} and run by a
+ * single loop that switches on the opcode. The stack, stack pointer and
+ * variable values all live in local variables of that loop, so the JIT
+ * compiler can keep them in registers.
+ * <p>
+ * The output is the same as {@link Soros#execute(List)}.
+ *
+ * @author RIT CS
+ */
+public class SwitchEngine {
+
+    private static final int INITIAL_STACK_SIZE = 64;
+
+    /**
+     * Decode and then run a program. Fused instructions are broken back
+     * up into their parts.
+     * @param program a list of Soros instructions
+     */
+    public void execute( List< Soros.Instruction > program ) {
+        this.execute( DecodedProgram.decode(
+                Superinstructions.expand( program ) ) );
+    }
+
+    /**
+     * Run a decoded program from the start, with an empty stack and
+     * no variables defined. Report on the final size of the stack and
+     * the contents of the symbol table.
+     * @param program the decoded program
+     */
+    public void execute( DecodedProgram program ) {
+        OutputSink out = OutputSink.standardOutput();
+        try {
+            out.println( "Executing compiled code..." );
+            int[] values = new int[ program.variableCount() ];
+            boolean[] defined = new boolean[ program.variableCount() ];
+            int sp = run( program, values, defined, out );
+            out.println( "Soros: execution ended with " +
+                         sp + " items left on the stack." );
+            out.println();
+            Errors.dump( symbolTable( program, values, defined ), out,
+                         ident -> !DagCompiler.isTemporary( ident ) );
+            out.println();
+        }
+        finally {
+            out.flush();
+        }
+    }
+
+    /**
+     * The dispatch loop.
+     * @param program the decoded program
+     * @param values the variable values, by slot
+     * @param defined which slots have been stored into
+     * @param out where PRINT sends its values
+     * @return how many items were left on the stack
+     */
+    private static int run( DecodedProgram program, int[] values,
+                            boolean[] defined, OutputSink out ) {
+        final int[] code = program.opcodes;
+        final int[] operands = program.operands;
+        int[] stack = new int[ INITIAL_STACK_SIZE ];
+        int sp = 0;
+        try {
+            for ( int pc = 0; pc < code.length; ++pc ) {
+                switch ( code[ pc ] ) {
+                    case PUSH -> {
+                        if ( sp == stack.length ) {
+                            stack = Arrays.copyOf( stack, sp * 2 );
+                        }
+                        stack[ sp++ ] = operands[ pc ];
+                    }
+                    case LOAD -> {
+                        int slot = operands[ pc ];
+                        if ( !defined[ slot ] ) {
+                            Errors.report( Errors.Type.UNINITIALIZED,
+                                           program.names[ slot ] );
+                        }
+                        if ( sp == stack.length ) {
+                            stack = Arrays.copyOf( stack, sp * 2 );
+                        }
+                        stack[ sp++ ] = values[ slot ];
+                    }
+                    case STORE -> {
+                        int slot = operands[ pc ];
+                        values[ slot ] = stack[ --sp ];
+                        defined[ slot ] = true;
+                    }
+                    case ADD -> {
+                        --sp;
+                        stack[ sp - 1 ] += stack[ sp ];
+                    }
+                    case SUB -> {
+                        --sp;
+                        stack[ sp - 1 ] -= stack[ sp ];
+                    }
+                    case MUL -> {
+                        --sp;
+                        stack[ sp - 1 ] *= stack[ sp ];
+                    }
+                    case DIV -> {
+                        --sp;
+                        stack[ sp - 1 ] /= stack[ sp ];
+                    }
+                    case NEG -> stack[ sp - 1 ] = -stack[ sp - 1 ];
+                    case SQRT -> stack[ sp - 1 ] =
+                            (int)Math.sqrt( stack[ sp - 1 ] );
+                    case PRINT -> out.accept( stack[ --sp ] );
+                    default -> throw new IllegalStateException(
+                            "bad opcode " + code[ pc ] );
+                }
+            }
+        }
+        catch( ArrayIndexOutOfBoundsException underflow ) {
+            // The stack only grows through the checks above, so a bad
+            // index can only come from popping an empty stack.
+            throw new EmptyStackException();
+        }
+        return sp;
+    }
+
+    /**
+     * Build the symbol table for the final dump. Slots are numbered in
+     * order of first appearance, which for a program that ran without
+     * error is the order in which Soros would have created the entries.
+     */
+    private static Map< String, Integer > symbolTable(
+            DecodedProgram program, int[] values, boolean[] defined ) {
+        Map< String, Integer > table = new HashMap<>();
+        for ( int slot = 0; slot < values.length; ++slot ) {
+            if ( defined[ slot ] ) {
+                table.put( program.names[ slot ], values[ slot ] );
+            }
+        }
+        return table;
+    }
+}
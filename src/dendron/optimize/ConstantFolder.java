@@ -0,0 +1,210 @@
+package dendron.optimize;
+
+import dendron.treenodes.*;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * An optimizer stage that runs between parsing and execution. It rewrites
+ * the expressions of a program so that work that does not depend on
+ * the values of variables is done once, ahead of time:
+ * <ul>
+ *     <li>operations on constants are folded, e.g. <code>+ 3 4</code>
+ *         becomes <code>7</code> and <code>% 25</code> becomes
+ *         <code>5</code></li>
+ *     <li>identities are removed: <code>x + 0</code>, <code>x - 0</code>,
+ *         <code>x * 1</code>, <code>x / 1</code> and <code>_ _ x</code>
+ *         all become <code>x</code></li>
+ *     <li><code>0 - x</code>, <code>x * -1</code> and <code>x / -1</code>
+ *         become <code>_ x</code></li>
+ *     <li><code>x * 0</code> becomes <code>0</code>, but only when
+ *         evaluating <code>x</code> could not have reported an error</li>
+ * </ul>
+ * Division by a constant zero is never folded, so the error is still
+ * reported when (and only if) the statement runs.
+ *
+ * @author RIT CS
+ */
+public class ConstantFolder {
+
+    private static final String ADD = "+";
+    private static final String SUB = "-";
+    private static final String MUL = "*";
+    private static final String DIV = "/";
+    private static final String NEG = "_";
+    private static final String SQRT = "%";
+
+    /**
+     * The variables that are certain to have been assigned
+     * before the statement being simplified
+     */
+    private final Set<String> defined = new HashSet<>();
+
+    private ConstantFolder() {
+    }
+
+    /**
+     * Simplify every expression in a program.
+     * @param program the program to simplify (it is not changed)
+     * @return an equivalent program; nodes that could not be simplified
+     *         are shared with the original
+     */
+    public static Program fold(Program program) {
+        ConstantFolder folder = new ConstantFolder();
+        Program result = new Program();
+        for (ActionNode action : program.getActions()) {
+            result.addAction(folder.fold(action));
+        }
+        return result;
+    }
+
+    private ActionNode fold(ActionNode action) {
+        ActionNode result = action;
+        if (action instanceof Assignment assignment) {
+            ExpressionNode rhs = simplify(assignment.getRhs());
+            if (rhs != assignment.getRhs()) {
+                result = new Assignment(assignment.getIdent(), rhs);
+            }
+            this.defined.add(assignment.getIdent());
+        }
+        else if (action instanceof Print print) {
+            ExpressionNode printee = simplify(print.getPrintee());
+            if (printee != print.getPrintee()) {
+                result = new Print(printee);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Simplify an expression, working from the leaves up.
+     * @param expr the expression to simplify
+     * @return the simplified expression, or expr itself if nothing changed
+     */
+    ExpressionNode simplify(ExpressionNode expr) {
+        if (expr instanceof UnaryOperation unary) {
+            return simplifyUnary(unary);
+        }
+        else if (expr instanceof BinaryOperation binary) {
+            return simplifyBinary(binary);
+        }
+        return expr;
+    }
+
+    private ExpressionNode simplifyUnary(UnaryOperation unary) {
+        String operator = unary.getOperator();
+        ExpressionNode operand = simplify(unary.getExpr());
+        if (operand instanceof Constant constant) {
+            int value = constant.getValue();
+            switch (operator) {
+                case NEG: return new Constant(-value);
+                case SQRT: return new Constant((int) Math.sqrt(value));
+            }
+        }
+        if (operator.equals(NEG) && operand instanceof UnaryOperation inner &&
+                inner.getOperator().equals(NEG)) {
+            return inner.getExpr();
+        }
+        return operand == unary.getExpr() ?
+                unary : new UnaryOperation(operator, operand);
+    }
+
+    private ExpressionNode simplifyBinary(BinaryOperation binary) {
+        String operator = binary.getOperator();
+        ExpressionNode left = simplify(binary.getLeft());
+        ExpressionNode right = simplify(binary.getRight());
+        Integer l = left instanceof Constant c ? c.getValue() : null;
+        Integer r = right instanceof Constant c ? c.getValue() : null;
+
+        if (l != null && r != null) {
+            switch (operator) {
+                case ADD: return new Constant(l + r);
+                case SUB: return new Constant(l - r);
+                case MUL: return new Constant(l * r);
+                case DIV:
+                    if (r != 0) {
+                        return new Constant(l / r);
+                    }
+            }
+        }
+        switch (operator) {
+            case ADD:
+                if (isValue(r, 0)) return left;
+                if (isValue(l, 0)) return right;
+                break;
+            case SUB:
+                if (isValue(r, 0)) return left;
+                if (isValue(l, 0)) return negate(right);
+                break;
+            case MUL:
+                if (isValue(r, 1)) return left;
+                if (isValue(l, 1)) return right;
+                if (isValue(r, -1)) return negate(left);
+                if (isValue(l, -1)) return negate(right);
+                if (isValue(r, 0) && !canFail(left)) return right;
+                if (isValue(l, 0) && !canFail(right)) return left;
+                break;
+            case DIV:
+                if (isValue(r, 1)) return left;
+                if (isValue(r, -1)) return negate(left);
+                break;
+        }
+        return left == binary.getLeft() && right == binary.getRight() ?
+                binary : new BinaryOperation(operator, left, right);
+    }
+
+    private static boolean isValue(Integer constant, int value) {
+        return constant != null && constant == value;
+    }
+
+    /**
+     * Negate an already simplified expression, cancelling out
+     * a negation that is already there.
+     */
+    private static ExpressionNode negate(ExpressionNode expr) {
+        if (expr instanceof UnaryOperation unary &&
+                unary.getOperator().equals(NEG)) {
+            return unary.getExpr();
+        }
+        return new UnaryOperation(NEG, expr);
+    }
+
+    /**
+     * Decides whether evaluating an expression might report an error,
+     * given the variables known to be defined at this point.
+     * @param expr the expression
+     * @return false only if evaluating expr is certain to succeed
+     */
+    boolean canFail(ExpressionNode expr) {
+        return canFail(expr, this.defined::contains);
+    }
+
+    /**
+     * Decides whether evaluating an expression might report an error:
+     * either it reads a variable that might not be defined yet, or it
+     * divides by something that is not a non-zero constant.
+     * @param expr the expression
+     * @param defined tells whether a variable is known to be defined
+     * @return false only if evaluating expr is certain to succeed
+     */
+    static boolean canFail(ExpressionNode expr, Predicate<String> defined) {
+        if (expr instanceof Variable variable) {
+            return !defined.test(variable.getName());
+        }
+        else if (expr instanceof UnaryOperation unary) {
+            return canFail(unary.getExpr(), defined);
+        }
+        else if (expr instanceof BinaryOperation binary) {
+            if (binary.getOperator().equals(DIV) &&
+                    !(binary.getRight() instanceof Constant c &&
+                      c.getValue() != 0)) {
+                return true;
+            }
+            return canFail(binary.getLeft(), defined) ||
+                   canFail(binary.getRight(), defined);
+        }
+        return false;
+    }
+}
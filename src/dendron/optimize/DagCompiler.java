@@ -0,0 +1,285 @@
+package dendron.optimize;
+
+import dendron.machine.ProgramBuilder;
+import dendron.treenodes.*;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A code generator that compiles a program as a DAG rather than a tree.
+ * Identical subexpressions, within one statement or across statements,
+ * are computed once, stored in a compiler temporary, and loaded from
+ * there wherever they appear again.
+ * <p>
+ * Expressions are hash-consed: each gets a value number made from its
+ * operator and the value numbers of its operands. A variable's value
+ * number includes how many times the variable has been assigned so far.
+ * So an expression that reads a variable stops matching earlier copies
+ * as soon as that variable is assigned again.
+ * <p>
+ * Temporaries are named {@link #TEMP_PREFIX} followed by a number. A
+ * Dendron identifier must start with a letter, so these names cannot
+ * clash with program variables.
+ *
+ * @author RIT CS
+ */
+public class DagCompiler {
+
+    /**
+     * The start of the name of every compiler temporary
+     */
+    public static final String TEMP_PREFIX = "$t";
+
+    /**
+     * The smallest subexpression, in instructions, worth sharing.
+     * Sharing costs an extra STORE and LOAD, so anything
+     * smaller cannot pay for itself.
+     */
+    private static final int MIN_SHARED_SIZE = 3;
+
+    private static final Object CONSTANT = new Object();
+
+    private record Key(Object tag, int a, int b) {}
+
+    private final Map<Key, Integer> numbers = new HashMap<>();
+    private final Map<ExpressionNode, Integer> numberOf =
+            new IdentityHashMap<>();
+    private final List<Integer> sizes = new ArrayList<>();
+    private final Set<Integer> shared = new HashSet<>();
+    private final Map<Integer, String> temps = new HashMap<>();
+
+    private DagCompiler() {
+    }
+
+    /**
+     * Emit the Soros assembly language for a program, sharing repeated
+     * subexpressions.
+     * @param program the program to compile
+     * @param out where the instructions will be written
+     */
+    public static void compile(Program program, PrintWriter out) {
+        DagCompiler compiler = new DagCompiler();
+        compiler.plan(program.getActions());
+        for (ActionNode action : program.getActions()) {
+            compiler.emit(action, out);
+        }
+    }
+
+    /**
+     * Build the Soros instructions for a program, sharing repeated
+     * subexpressions, without writing any assembly language text.
+     * @param program the program to compile
+     * @param code where the instructions will be emitted
+     */
+    public static void compile(Program program, ProgramBuilder code) {
+        DagCompiler compiler = new DagCompiler();
+        compiler.plan(program.getActions());
+        for (ActionNode action : program.getActions()) {
+            compiler.emit(action, code);
+        }
+    }
+
+    /**
+     * Tell whether a variable is one of this compiler's temporaries,
+     * as opposed to one the program named.
+     * @param name the variable's name
+     * @return true if the name was made up by the compiler
+     */
+    public static boolean isTemporary(String name) {
+        return name.startsWith(TEMP_PREFIX);
+    }
+
+    /**
+     * Give every expression a value number, then decide which
+     * value numbers are worth keeping in temporaries.
+     */
+    private void plan(List<ActionNode> actions) {
+        Map<String, Integer> versions = new HashMap<>();
+        Map<Integer, Integer> occurrences = new HashMap<>();
+        for (ActionNode action : actions) {
+            number(expressionOf(action), versions, occurrences);
+            if (action instanceof Assignment assignment) {
+                versions.merge(assignment.getIdent(), 1, Integer::sum);
+            }
+        }
+        for (Map.Entry<Integer, Integer> entry : occurrences.entrySet()) {
+            int id = entry.getKey();
+            if (entry.getValue() >= 2 && this.sizes.get(id) >= MIN_SHARED_SIZE) {
+                this.shared.add(id);
+            }
+        }
+
+        // An expression may only repeat inside a larger shared expression,
+        // in which case it will be computed once anyway. Drop those
+        // until every shared expression is really used more than once.
+        boolean changed = true;
+        while (changed) {
+            Map<Integer, Integer> uses = new HashMap<>();
+            Set<Integer> computed = new HashSet<>();
+            for (ActionNode action : actions) {
+                countUses(expressionOf(action), uses, computed);
+            }
+            changed = this.shared.removeIf(id -> uses.getOrDefault(id, 0) < 2);
+        }
+    }
+
+    private int number(ExpressionNode expr, Map<String, Integer> versions,
+                       Map<Integer, Integer> occurrences) {
+        Key key;
+        int size = 1;
+        if (expr instanceof Constant constant) {
+            key = new Key(CONSTANT, constant.getValue(), 0);
+        }
+        else if (expr instanceof Variable variable) {
+            key = new Key(variable.getName(),
+                          versions.getOrDefault(variable.getName(), 0), 0);
+        }
+        else if (expr instanceof UnaryOperation unary) {
+            int operand = number(unary.getExpr(), versions, occurrences);
+            key = new Key(unary.getOperator(), operand, -1);
+            size += this.sizes.get(operand);
+        }
+        else {
+            BinaryOperation binary = (BinaryOperation) expr;
+            int left = number(binary.getLeft(), versions, occurrences);
+            int right = number(binary.getRight(), versions, occurrences);
+            key = new Key(binary.getOperator(), left, right);
+            size += this.sizes.get(left) + this.sizes.get(right);
+        }
+        Integer id = this.numbers.get(key);
+        if (id == null) {
+            id = this.sizes.size();
+            this.numbers.put(key, id);
+            this.sizes.add(size);
+        }
+        this.numberOf.put(expr, id);
+        occurrences.merge(id, 1, Integer::sum);
+        return id;
+    }
+
+    /**
+     * Count how often each shared expression would be needed, walking
+     * the statements in the same order that {@link #emit} will.
+     */
+    private void countUses(ExpressionNode expr, Map<Integer, Integer> uses,
+                           Set<Integer> computed) {
+        int id = this.numberOf.get(expr);
+        if (this.shared.contains(id)) {
+            uses.merge(id, 1, Integer::sum);
+            if (!computed.add(id)) {
+                return;
+            }
+        }
+        if (expr instanceof UnaryOperation unary) {
+            countUses(unary.getExpr(), uses, computed);
+        }
+        else if (expr instanceof BinaryOperation binary) {
+            countUses(binary.getLeft(), uses, computed);
+            countUses(binary.getRight(), uses, computed);
+        }
+    }
+
+    private static ExpressionNode expressionOf(ActionNode action) {
+        return action instanceof Assignment assignment ?
+                assignment.getRhs() : ((Print) action).getPrintee();
+    }
+
+    private void emit(ActionNode action, PrintWriter out) {
+        emit(expressionOf(action), out);
+        if (action instanceof Assignment assignment) {
+            out.println("STORE " + assignment.getIdent());
+        }
+        else {
+            out.println("PRINT");
+        }
+    }
+
+    private void emit(ExpressionNode expr, PrintWriter out) {
+        int id = this.numberOf.get(expr);
+        String temp = this.temps.get(id);
+        if (temp != null) {
+            out.println("LOAD " + temp);
+            return;
+        }
+        if (expr instanceof UnaryOperation unary) {
+            emit(unary.getExpr(), out);
+            out.println(unary.getOperator().equals("_") ? "NEG " : "SQRT ");
+        }
+        else if (expr instanceof BinaryOperation binary) {
+            emit(binary.getLeft(), out);
+            emit(binary.getRight(), out);
+            out.println(mnemonic(binary.getOperator()));
+        }
+        else {
+            expr.compile(out);
+        }
+        if (this.shared.contains(id)) {
+            temp = TEMP_PREFIX + this.temps.size();
+            this.temps.put(id, temp);
+            out.println("STORE " + temp);
+            out.println("LOAD " + temp);
+        }
+    }
+
+    private void emit(ActionNode action, ProgramBuilder code) {
+        emit(expressionOf(action), code);
+        if (action instanceof Assignment assignment) {
+            code.store(assignment.getIdent());
+        }
+        else {
+            code.print();
+        }
+    }
+
+    private void emit(ExpressionNode expr, ProgramBuilder code) {
+        int id = this.numberOf.get(expr);
+        String temp = this.temps.get(id);
+        if (temp != null) {
+            code.load(temp);
+            return;
+        }
+        if (expr instanceof UnaryOperation unary) {
+            emit(unary.getExpr(), code);
+            if (unary.getOperator().equals("_")) {
+                code.negate();
+            }
+            else {
+                code.squareRoot();
+            }
+        }
+        else if (expr instanceof BinaryOperation binary) {
+            emit(binary.getLeft(), code);
+            emit(binary.getRight(), code);
+            switch (binary.getOperator()) {
+                case "+" -> code.add();
+                case "-" -> code.subtract();
+                case "*" -> code.multiply();
+                default -> code.divide();
+            }
+        }
+        else {
+            expr.compile(code);
+        }
+        if (this.shared.contains(id)) {
+            temp = TEMP_PREFIX + this.temps.size();
+            this.temps.put(id, temp);
+            code.store(temp).load(temp);
+        }
+    }
+
+    private static String mnemonic(String operator) {
+        return switch (operator) {
+            case "+" -> "ADD ";
+            case "-" -> "SUB ";
+            case "*" -> "MUL ";
+            default -> "DIV ";
+        };
+    }
+}
@@ -0,0 +1,114 @@
+package dendron.optimize;
+
+import dendron.treenodes.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remove assignments whose values are never used. A backward liveness
+ * analysis over the program's statements finds every {@link Assignment}
+ * whose variable is overwritten before it is read, or is never read at
+ * all. Such an assignment is dropped, as long as evaluating its
+ * right-hand side could not have reported an error. Otherwise removing
+ * it would change what the program does.
+ * <p>
+ * Every variable is normally treated as live at the end of the program,
+ * so each one's last assignment is kept and the final symbol table
+ * does not change. Turning that off also removes assignments that only
+ * feed the final symbol table.
+ *
+ * @author RIT CS
+ */
+public class DeadStoreEliminator {
+
+    private final boolean keepFinalValues;
+    private int removed = 0;
+
+    /**
+     * Set up an eliminator.
+     * @param keepFinalValues true if the last assignment to every variable
+     *                        must be kept so the final symbol table is
+     *                        unchanged
+     */
+    public DeadStoreEliminator(boolean keepFinalValues) {
+        this.keepFinalValues = keepFinalValues;
+    }
+
+    /**
+     * Remove the dead assignments from a program.
+     * @param program the program to clean up (it is not changed)
+     * @return an equivalent program without the dead assignments
+     */
+    public Program eliminate(Program program) {
+        List<ActionNode> actions = program.getActions();
+
+        // Forward pass: where each variable is first assigned. A variable
+        // is certainly defined before every later statement.
+        Map<String, Integer> firstAssigned = new HashMap<>();
+        for (int i = 0; i < actions.size(); i++) {
+            if (actions.get(i) instanceof Assignment assignment) {
+                firstAssigned.putIfAbsent(assignment.getIdent(), i);
+            }
+        }
+
+        // Backward pass: which variables might still be read.
+        Set<String> live = new HashSet<>();
+        if (this.keepFinalValues) {
+            live.addAll(firstAssigned.keySet());
+        }
+        boolean[] keep = new boolean[actions.size()];
+        for (int i = actions.size() - 1; i >= 0; i--) {
+            ActionNode action = actions.get(i);
+            if (action instanceof Assignment assignment) {
+                ExpressionNode rhs = assignment.getRhs();
+                int here = i;
+                if (!live.contains(assignment.getIdent()) &&
+                        !ConstantFolder.canFail(rhs, name ->
+                                firstAssigned.getOrDefault(name, here) < here)) {
+                    continue;
+                }
+                live.remove(assignment.getIdent());
+                addVariables(rhs, live);
+            }
+            else if (action instanceof Print print) {
+                addVariables(print.getPrintee(), live);
+            }
+            keep[i] = true;
+        }
+
+        Program result = new Program();
+        for (int i = 0; i < actions.size(); i++) {
+            if (keep[i]) {
+                result.addAction(actions.get(i));
+            }
+            else {
+                this.removed++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return how many statements have been removed so far
+     */
+    public int removed() {
+        return this.removed;
+    }
+
+    private static void addVariables(ExpressionNode expr, Set<String> names) {
+        if (expr instanceof Variable variable) {
+            names.add(variable.getName());
+        }
+        else if (expr instanceof UnaryOperation unary) {
+            addVariables(unary.getExpr(), names);
+        }
+        else if (expr instanceof BinaryOperation binary) {
+            addVariables(binary.getLeft(), names);
+            addVariables(binary.getRight(), names);
+        }
+    }
+}
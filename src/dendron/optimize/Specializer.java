@@ -0,0 +1,298 @@
+package dendron.optimize;
+
+import dendron.Errors;
+import dendron.treenodes.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Rewrites a program's expressions into node classes that each do one
+ * thing. A {@link BinaryOperation} or {@link UnaryOperation} compares its
+ * operator string on every evaluation; its specialized replacement already
+ * knows the operator, and the common case of a constant right operand
+ * has classes of its own. A variable that is certainly assigned before
+ * it is read becomes a node that fetches its slot without checking.
+ * <p>
+ * The replacements are final subclasses of the original node classes,
+ * so every other part of Dendron (display, compilation, the optimizers)
+ * treats them just like the nodes they replace. Only
+ * {@link ExpressionNode#evaluate(Frame)} is faster. Specialize after
+ * {@link ConstantFolder#fold(Program)}, if that is used, and before
+ * {@link Program#resolve(Frame)}.
+ *
+ * @author RIT CS
+ */
+public class Specializer {
+
+    private static final String ADD = "+";
+    private static final String SUB = "-";
+    private static final String MUL = "*";
+    private static final String DIV = "/";
+    private static final String NEG = "_";
+
+    /**
+     * The variables that are certain to have been assigned
+     * before the statement being specialized
+     */
+    private final Set<String> defined = new HashSet<>();
+
+    private Specializer() {
+    }
+
+    /**
+     * Specialize every expression in a program.
+     * @param program the program to rewrite (it is not changed)
+     * @return an equivalent program made of specialized nodes
+     */
+    public static Program specialize(Program program) {
+        Specializer specializer = new Specializer();
+        Program result = new Program();
+        for (ActionNode action : program.getActions()) {
+            if (action instanceof Assignment assignment) {
+                result.addAction(new Assignment(assignment.getIdent(),
+                        specializer.rewrite(assignment.getRhs())));
+                specializer.defined.add(assignment.getIdent());
+            }
+            else {
+                Print print = (Print) action;
+                result.addAction(
+                        new Print(specializer.rewrite(print.getPrintee())));
+            }
+        }
+        return result;
+    }
+
+    private ExpressionNode rewrite(ExpressionNode expr) {
+        if (expr instanceof Variable variable) {
+            return this.defined.contains(variable.getName()) ?
+                    new DefinedVariable(variable.getName()) : variable;
+        }
+        else if (expr instanceof UnaryOperation unary) {
+            ExpressionNode operand = rewrite(unary.getExpr());
+            return unary.getOperator().equals(NEG) ?
+                    new Neg(operand) : new Sqrt(operand);
+        }
+        else if (expr instanceof BinaryOperation binary) {
+            String operator = binary.getOperator();
+            ExpressionNode left = rewrite(binary.getLeft());
+            ExpressionNode right = rewrite(binary.getRight());
+            if (right instanceof Constant c) {
+                switch (operator) {
+                    case ADD: return new AddConst(left, c);
+                    case SUB: return new SubConst(left, c);
+                    case MUL: return new MulConst(left, c);
+                    case DIV:
+                        if (c.getValue() != 0) {
+                            return new DivByNonZeroConst(left, c);
+                        }
+                }
+            }
+            switch (operator) {
+                case ADD: return new Add(left, right);
+                case SUB: return new Sub(left, right);
+                case MUL: return new Mul(left, right);
+                default: return new Div(left, right);
+            }
+        }
+        return expr;
+    }
+
+    /**
+     * A variable that has certainly been assigned by the time it is read
+     */
+    private static final class DefinedVariable extends Variable {
+        private int slot = -1;
+
+        DefinedVariable(String name) {
+            super(name);
+        }
+
+        @Override
+        public void resolve(Frame frame) {
+            this.slot = frame.resolve(getName());
+        }
+
+        @Override
+        public int evaluate(Frame frame) {
+            return frame.get(this.slot);
+        }
+    }
+
+    private static final class Neg extends UnaryOperation {
+        private final ExpressionNode operand;
+
+        Neg(ExpressionNode operand) {
+            super(NEG, operand);
+            this.operand = operand;
+        }
+
+        @Override
+        public int evaluate(Frame frame) {
+            return -this.operand.evaluate(frame);
+        }
+    }
+
+    private static final class Sqrt extends UnaryOperation {
+        private final ExpressionNode operand;
+
+        Sqrt(ExpressionNode operand) {
+            super("%", operand);
+            this.operand = operand;
+        }
+
+        @Override
+        public int evaluate(Frame frame) {
+            return (int) Math.sqrt(this.operand.evaluate(frame));
+        }
+    }
+
+    /**
+     * The common part of the specialized binary operations. An operand
+     * that is a variable known to be assigned is read straight from its
+     * slot. That saves a call through {@link ExpressionNode} that the JVM
+     * could not inline, because it sees every kind of node at that call.
+     */
+    private static abstract class Binary extends BinaryOperation {
+        private final ExpressionNode left;
+        private final ExpressionNode right;
+        private int leftSlot = -1;
+        private int rightSlot = -1;
+
+        Binary(String operator, ExpressionNode left, ExpressionNode right) {
+            super(operator, left, right);
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public final void resolve(Frame frame) {
+            super.resolve(frame);
+            if (this.left instanceof DefinedVariable variable) {
+                this.leftSlot = variable.slot;
+            }
+            if (this.right instanceof DefinedVariable variable) {
+                this.rightSlot = variable.slot;
+            }
+        }
+
+        final int left(Frame frame) {
+            return this.leftSlot >= 0 ?
+                    frame.get(this.leftSlot) : this.left.evaluate(frame);
+        }
+
+        final int right(Frame frame) {
+            return this.rightSlot >= 0 ?
+                    frame.get(this.rightSlot) : this.right.evaluate(frame);
+        }
+    }
+
+    private static final class Add extends Binary {
+        Add(ExpressionNode left, ExpressionNode right) {
+            super(ADD, left, right);
+        }
+
+        @Override
+        public int evaluate(Frame frame) {
+            return left(frame) + right(frame);
+        }
+    }
+
+    private static final class Sub extends Binary {
+        Sub(ExpressionNode left, ExpressionNode right) {
+            super(SUB, left, right);
+        }
+
+        @Override
+        public int evaluate(Frame frame) {
+            return left(frame) - right(frame);
+        }
+    }
+
+    private static final class Mul extends Binary {
+        Mul(ExpressionNode left, ExpressionNode right) {
+            super(MUL, left, right);
+        }
+
+        @Override
+        public int evaluate(Frame frame) {
+            return left(frame) * right(frame);
+        }
+    }
+
+    /**
+     * Division whose divisor is only known at run time. The divisor is
+     * evaluated and checked first, as in
+     * {@link BinaryOperation#evaluate(Frame)}.
+     */
+    private static final class Div extends Binary {
+        Div(ExpressionNode left, ExpressionNode right) {
+            super(DIV, left, right);
+        }
+
+        @Override
+        public int evaluate(Frame frame) {
+            int divisor = right(frame);
+            if (divisor == 0) {
+                Errors.report(Errors.Type.DIVIDE_BY_ZERO, null);
+            }
+            return left(frame) / divisor;
+        }
+    }
+
+    private static final class AddConst extends Binary {
+        private final int value;
+
+        AddConst(ExpressionNode left, Constant right) {
+            super(ADD, left, right);
+            this.value = right.getValue();
+        }
+
+        @Override
+        public int evaluate(Frame frame) {
+            return left(frame) + this.value;
+        }
+    }
+
+    private static final class SubConst extends Binary {
+        private final int value;
+
+        SubConst(ExpressionNode left, Constant right) {
+            super(SUB, left, right);
+            this.value = right.getValue();
+        }
+
+        @Override
+        public int evaluate(Frame frame) {
+            return left(frame) - this.value;
+        }
+    }
+
+    private static final class MulConst extends Binary {
+        private final int value;
+
+        MulConst(ExpressionNode left, Constant right) {
+            super(MUL, left, right);
+            this.value = right.getValue();
+        }
+
+        @Override
+        public int evaluate(Frame frame) {
+            return left(frame) * this.value;
+        }
+    }
+
+    private static final class DivByNonZeroConst extends Binary {
+        private final int value;
+
+        DivByNonZeroConst(ExpressionNode left, Constant right) {
+            super(DIV, left, right);
+            this.value = right.getValue();
+        }
+
+        @Override
+        public int evaluate(Frame frame) {
+            return left(frame) / this.value;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package dendron.parallel;
+
+import dendron.DendronException;
+import dendron.treenodes.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs the statements of a program in parallel wherever the program's
+ * data flow allows it, with exactly the results of running it in order.
+ * <p>
+ * Every assignment writes a new version of its variable: its value is
+ * kept in a slot of its own, indexed by statement. A statement only has
+ * to wait for the assignments that produced the versions it reads.
+ * Writing a variable that an earlier statement reads, or writing it
+ * twice, does not create a dependency. A statement's expression is
+ * evaluated by a copy of the tree interpreter's nodes, in a {@link Frame}
+ * of its own that is filled with the versions it reads just before it runs.
+ * Each statement is given a level,
+ * one more than the highest level of the statements it reads from. All
+ * the statements of a level are run together on a fork-join pool, and
+ * the levels are run one after another. Each value slot is written by
+ * one task and only read after that level has finished, so no locks
+ * are needed.
+ * <p>
+ * Print statements and errors are handled in program order. After each
+ * level, the values printed by the finished statements at the front of
+ * the program are passed on. When that reaches a statement that failed,
+ * its error is thrown. That is the error a sequential run would have
+ * reported, whichever thread hit an error first.
+ *
+ * @author RIT CS
+ */
+public class ParallelExecutor {
+
+    /**
+     * Roughly how many nodes of expressions are worth
+     * a fork-join task of their own
+     */
+    private static final int TASK_WEIGHT = 2048;
+
+    private final ForkJoinPool pool;
+    private final IntConsumer printer;
+
+    // The plan
+    private final List<ActionNode> actions;
+    private final ExpressionNode[] exprs;
+    private final Frame[] frames;
+    private final int[][] producers;
+    private final int[] weights;
+    private final List<List<Integer>> levels = new ArrayList<>();
+    private final Map<String, Integer> lastWrite = new LinkedHashMap<>();
+
+    // The run
+    private final int[] values;
+    private final DendronException[] errors;
+    private final boolean[] failed;
+
+    private ParallelExecutor(Program program, IntConsumer printer,
+                             ForkJoinPool pool) {
+        this.pool = pool;
+        this.printer = printer;
+        this.actions = program.getActions();
+        int size = this.actions.size();
+        this.exprs = new ExpressionNode[size];
+        this.frames = new Frame[size];
+        this.producers = new int[size][];
+        this.weights = new int[size];
+        this.values = new int[size];
+        this.errors = new DendronException[size];
+        this.failed = new boolean[size];
+    }
+
+    /**
+     * Run a program, in parallel where possible.
+     * @param program the program to run
+     * @param printer receives the value of each print statement,
+     *                in program order
+     * @param pool where the statements are run
+     * @return the final value of every variable the program assigns,
+     *         added in the order the variables were first named
+     * @throws DendronException the error that running the program
+     *         in order would have reported first
+     */
+    public static Map<String, Integer> execute(Program program,
+                                               IntConsumer printer,
+                                               ForkJoinPool pool) {
+        ParallelExecutor executor =
+                new ParallelExecutor(program, printer, pool);
+        Map<String, Integer> order = executor.plan();
+        executor.run();
+
+        Map<String, Integer> symTab = new HashMap<>();
+        for (String name : order.keySet()) {
+            Integer writer = executor.lastWrite.get(name);
+            if (writer != null) {
+                symTab.put(name, executor.values[writer]);
+            }
+        }
+        return symTab;
+    }
+
+    /**
+     * Compile every statement and sort it into its level.
+     * @return every variable name, in the order the
+     *         tree interpreter's frame would give them slots
+     */
+    private Map<String, Integer> plan() {
+        Map<String, Integer> order = new LinkedHashMap<>();
+        int[] level = new int[this.actions.size()];
+        for (int i = 0; i < this.actions.size(); i++) {
+            ActionNode action = this.actions.get(i);
+            // The statement gets a copy of its expression, resolved into
+            // a frame of its own holding just the versions of the
+            // variables that it reads. The program's own tree is left
+            // alone, so it can be run some other way at the same time.
+            ExpressionNode expr = ExpressionNode.copy(
+                    action instanceof Assignment assignment ?
+                    assignment.getRhs() : ((Print) action).getPrintee());
+            Frame frame = new Frame();
+            expr.resolve(frame);
+            int[] from = new int[frame.size()];
+            for (int slot = 0; slot < from.length; slot++) {
+                String name = frame.nameOf(slot);
+                order.putIfAbsent(name, order.size());
+                from[slot] = this.lastWrite.getOrDefault(name, -1);
+            }
+            this.exprs[i] = expr;
+            this.frames[i] = frame;
+            this.producers[i] = from;
+            this.weights[i] = size(expr);
+            for (int producer : this.producers[i]) {
+                if (producer >= 0) {
+                    level[i] = Math.max(level[i], level[producer] + 1);
+                }
+            }
+            if (action instanceof Assignment assignment) {
+                order.putIfAbsent(assignment.getIdent(), order.size());
+                this.lastWrite.put(assignment.getIdent(), i);
+            }
+            while (this.levels.size() <= level[i]) {
+                this.levels.add(new ArrayList<>());
+            }
+            this.levels.get(level[i]).add(i);
+        }
+        return order;
+    }
+
+    private static int size(ExpressionNode expr) {
+        if (expr instanceof UnaryOperation unary) {
+            return 1 + size(unary.getExpr());
+        }
+        else if (expr instanceof BinaryOperation binary) {
+            return 1 + size(binary.getLeft()) + size(binary.getRight());
+        }
+        return 1;
+    }
+
+    private void run() {
+        int next = 0;
+        boolean[] finished = new boolean[this.actions.size()];
+        for (List<Integer> level : this.levels) {
+            int weight = 0;
+            for (int i : level) {
+                weight += this.weights[i];
+            }
+            if (level.size() > 1 && weight > TASK_WEIGHT) {
+                this.pool.invoke(new Level(level, 0, level.size()));
+            }
+            else {
+                for (int i : level) {
+                    runStatement(i);
+                }
+            }
+            for (int i : level) {
+                finished[i] = true;
+            }
+            // Pass on the output of the finished front of the program.
+            while (next < finished.length && finished[next]) {
+                if (this.failed[next]) {
+                    throw this.errors[next];
+                }
+                if (this.actions.get(next) instanceof Print) {
+                    this.printer.accept(this.values[next]);
+                }
+                next++;
+            }
+        }
+    }
+
+    private void runStatement(int i) {
+        Frame frame = this.frames[i];
+        int[] from = this.producers[i];
+        for (int slot = 0; slot < from.length; slot++) {
+            if (from[slot] >= 0) {
+                frame.set(slot, this.values[from[slot]]);
+            }
+        }
+        try {
+            this.values[i] = this.exprs[i].evaluate(frame);
+        }
+        catch (DendronException error) {
+            this.errors[i] = error;
+            this.failed[i] = true;
+        }
+    }
+
+    /**
+     * Runs part of a level, splitting it while it is big enough.
+     */
+    private class Level extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Integer> statements;
+        private final int from;
+        private final int to;
+
+        Level(List<Integer> statements, int from, int to) {
+            this.statements = statements;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            int weight = 0;
+            for (int k = this.from; k < this.to; k++) {
+                weight += weights[this.statements.get(k)];
+            }
+            if (this.to - this.from > 1 && weight > TASK_WEIGHT) {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new Level(this.statements, this.from, middle),
+                          new Level(this.statements, middle, this.to));
+            }
+            else {
+                for (int k = this.from; k < this.to; k++) {
+                    runStatement(this.statements.get(k));
+                }
+            }
+        }
+    }
+}
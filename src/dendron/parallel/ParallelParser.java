@@ -0,0 +1,216 @@
+package dendron.parallel;
+
+import dendron.DendronException;
+import dendron.Lexer;
+import dendron.treenodes.ActionNode;
+import dendron.treenodes.Program;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+/**
+ * Parses a big program in pieces, in parallel, with exactly the result
+ * of parsing it in one go.
+ * <p>
+ * Every statement starts with a <code>:=</code> or <code>#</code> token,
+ * and those tokens cannot appear anywhere else in a well formed
+ * program except as the name right after a <code>:=</code>. So the
+ * source text is cut into about equal ranges just before such tokens,
+ * and each range is parsed into a program of its own on a fork-join
+ * pool. The statements of the ranges are then put together in order.
+ * <p>
+ * A range that fails to parse may only have failed because of where it
+ * was cut, so its error is not used directly. Instead, everything from
+ * the start of the first range that failed is parsed again in one go.
+ * The ranges before it parsed cleanly, so that parse starts at a real
+ * statement boundary and reports the error a sequential parse would
+ * have, whichever thread hit an error first.
+ *
+ * @author RIT CS
+ */
+public class ParallelParser {
+
+    /**
+     * Sources shorter than this many characters are parsed in one piece
+     */
+    private static final int MIN_CHUNK = 1 << 20;
+
+    private static final String ASSIGN = ":=";
+    private static final String PRINT = "#";
+
+    private final String source;
+    private final Function<Lexer, Program> parser;
+    private final int[] bounds;
+    private final Program[] parts;
+    private final boolean[] failed;
+
+    private ParallelParser(String source, Function<Lexer, Program> parser,
+                           int[] bounds) {
+        this.source = source;
+        this.parser = parser;
+        this.bounds = bounds;
+        this.parts = new Program[bounds.length - 1];
+        this.failed = new boolean[bounds.length - 1];
+    }
+
+    /**
+     * Parse a program, in parallel if it is big enough.
+     * @param source the text of the program
+     * @param parser parses every token a lexer has to give
+     *               into a program
+     * @param pool where the pieces are parsed
+     * @return the whole program
+     * @throws DendronException the error that parsing the
+     *         program in one go would have reported
+     */
+    public static Program parse(String source,
+                                Function<Lexer, Program> parser,
+                                ForkJoinPool pool) {
+        int count = Math.max(1, Math.min(source.length() / MIN_CHUNK,
+                                         4 * pool.getParallelism()));
+        int[] bounds = split(source, count);
+        if (bounds.length == 2) {
+            return parser.apply(lexer(source, 0, source.length()));
+        }
+        ParallelParser parallel = new ParallelParser(source, parser, bounds);
+        pool.invoke(parallel.new Chunks(0, parallel.parts.length));
+        return parallel.merge();
+    }
+
+    /**
+     * Choose where the pieces start and end. Each one but the first
+     * starts at the first token of a statement.
+     * @return the offsets of the piece boundaries, from 0 to the length
+     */
+    private static int[] split(String source, int count) {
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(0);
+        for (int k = 1; k < count; k++) {
+            int at = nextStatement(source,
+                                   (int) ((long) source.length() * k / count));
+            if (at < source.length() && at > bounds.get(bounds.size() - 1)) {
+                bounds.add(at);
+            }
+        }
+        bounds.add(source.length());
+        return bounds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @return the offset of the first statement that starts at or after
+     *         position, or the length of the source if there is none
+     */
+    private static int nextStatement(String source, int position) {
+        int length = source.length();
+        int at = position;
+        // Move past the rest of a token that the position lands in.
+        while (at > 0 && at < length &&
+               !Character.isWhitespace(source.charAt(at - 1))) {
+            at++;
+        }
+        while (true) {
+            while (at < length && Character.isWhitespace(source.charAt(at))) {
+                at++;
+            }
+            if (at == length) {
+                return length;
+            }
+            int end = at;
+            while (end < length &&
+                   !Character.isWhitespace(source.charAt(end))) {
+                end++;
+            }
+            if ((isToken(source, at, end, ASSIGN) ||
+                 isToken(source, at, end, PRINT)) &&
+                !previousIsAssign(source, at)) {
+                return at;
+            }
+            at = end;
+        }
+    }
+
+    /**
+     * @return true if the token before the one starting at position
+     *         is a <code>:=</code>, which would make this one a name
+     */
+    private static boolean previousIsAssign(String source, int position) {
+        int end = position;
+        while (end > 0 && Character.isWhitespace(source.charAt(end - 1))) {
+            end--;
+        }
+        int start = end;
+        while (start > 0 && !Character.isWhitespace(source.charAt(start - 1))) {
+            start--;
+        }
+        return isToken(source, start, end, ASSIGN);
+    }
+
+    private static boolean isToken(String source, int start, int end,
+                                   String token) {
+        return end - start == token.length() &&
+               source.startsWith(token, start);
+    }
+
+    private static Lexer lexer(String source, int from, int to) {
+        return new Lexer(new StringReader(source.substring(from, to)));
+    }
+
+    /**
+     * Put the pieces' statements together, parsing again from the
+     * first piece that failed.
+     */
+    private Program merge() {
+        Program program = new Program();
+        for (int k = 0; k < this.parts.length; k++) {
+            if (this.failed[k]) {
+                Program rest = this.parser.apply(lexer(
+                        this.source, this.bounds[k], this.source.length()));
+                for (ActionNode action : rest.getActions()) {
+                    program.addAction(action);
+                }
+                break;
+            }
+            for (ActionNode action : this.parts[k].getActions()) {
+                program.addAction(action);
+            }
+        }
+        return program;
+    }
+
+    /**
+     * Parses the pieces in a range, splitting the range in two
+     * until it is a single piece.
+     */
+    private class Chunks extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        Chunks(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > 1) {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new Chunks(this.from, middle),
+                          new Chunks(middle, this.to));
+                return;
+            }
+            try {
+                parts[this.from] = parser.apply(lexer(
+                        source, bounds[this.from], bounds[this.from + 1]));
+            }
+            catch (DendronException error) {
+                failed[this.from] = true;
+            }
+        }
+    }
+}
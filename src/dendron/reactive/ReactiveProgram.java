@@ -0,0 +1,326 @@
+package dendron.reactive;
+
+import dendron.DendronException;
+import dendron.treenodes.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A program kept live, like a spreadsheet: its inputs can be changed
+ * and only the statements that depend on them are run again.
+ * <p>
+ * An input is a variable that the program reads before assigning it.
+ * As in the {@link dendron.parallel.ParallelExecutor}, every assignment
+ * writes a new version of its variable, and every statement reads fixed
+ * versions: either an input or the value of an earlier statement. That
+ * gives a graph from each statement to the statements that read what it
+ * wrote. The value of each statement is kept. When inputs change, the
+ * statements that read them are queued, and each statement whose value
+ * turns out different queues its own readers in turn. Statements are
+ * taken from the queue in program order, so each one is run at most
+ * once per update, after everything it reads is up to date. The work
+ * done depends on how much of the program the change reaches, not on
+ * how long the program is.
+ * <p>
+ * A statement that fails keeps its error in place of a value, and the
+ * statements that read from it fail with the same error. The error the
+ * program would report if it were run in order is {@link #error()}.
+ * <p>
+ * Each statement's expression is copied and resolved once, into a frame
+ * of its own that is refilled for every run, so an update does no name
+ * lookups and allocates no frames. Because of the copies, the tree the
+ * program was made from may still be run in other ways. Only one
+ * thread at a time may use a reactive program.
+ *
+ * @author RIT CS
+ */
+public class ReactiveProgram {
+
+    /**
+     * The outputs that one update changed
+     * @param variables the new final value of each variable that changed
+     * @param prints the new value of each print statement that changed,
+     *               by its position among the program's prints
+     * @param error the error that the program, run in order, now reports
+     */
+    public record Changes(Map<String, Integer> variables,
+                          Map<Integer, Integer> prints,
+                          Optional<DendronException> error) {}
+
+    private final List<ActionNode> actions;
+    private final ExpressionNode[] exprs;
+    private final Frame[] frames;
+
+    /**
+     * Where each slot of a statement's frame is read from: a statement
+     * number, or the bitwise complement of an input number
+     */
+    private final int[][] sources;
+    private final int[][] readers;
+    private final int[] printNumber;
+    private final int[] printStatements;
+
+    private final Map<String, Integer> inputs = new LinkedHashMap<>();
+    private final int[][] inputReaders;
+    private final int[] inputValues;
+    private final boolean[] inputSet;
+
+    /** The statement whose value is each variable's final value */
+    private final Map<String, Integer> lastWrite = new LinkedHashMap<>();
+
+    // The state: each statement's value, or the error it failed with
+    private final int[] values;
+    private final DendronException[] errors;
+    private final TreeSet<Integer> failures = new TreeSet<>();
+
+    // The statements waiting to be run again
+    private final PriorityQueue<Integer> queue = new PriorityQueue<>();
+    private final boolean[] queued;
+
+    /**
+     * Build the dependency graph of a program and run it once,
+     * with none of its inputs set.
+     * @param program the program to keep live
+     */
+    public ReactiveProgram(Program program) {
+        this.actions = program.getActions();
+        int size = this.actions.size();
+        this.exprs = new ExpressionNode[size];
+        this.frames = new Frame[size];
+        this.sources = new int[size][];
+        this.printNumber = new int[size];
+        this.values = new int[size];
+        this.errors = new DendronException[size];
+        this.queued = new boolean[size];
+
+        List<List<Integer>> statementReaders = new ArrayList<>();
+        List<List<Integer>> inputReaderLists = new ArrayList<>();
+        int prints = 0;
+        for (int i = 0; i < size; i++) {
+            ActionNode action = this.actions.get(i);
+            statementReaders.add(new ArrayList<>());
+            this.exprs[i] = ExpressionNode.copy(action instanceof Assignment assignment ?
+                    assignment.getRhs() : ((Print) action).getPrintee());
+            this.printNumber[i] = action instanceof Print ? prints++ : -1;
+            this.frames[i] = new Frame();
+            this.exprs[i].resolve(this.frames[i]);
+
+            int[] from = new int[this.frames[i].size()];
+            for (int slot = 0; slot < from.length; slot++) {
+                String name = this.frames[i].nameOf(slot);
+                Integer writer = this.lastWrite.get(name);
+                if (writer != null) {
+                    from[slot] = writer;
+                    statementReaders.get(writer).add(i);
+                }
+                else {
+                    int input = this.inputs.computeIfAbsent(name,
+                            n -> this.inputs.size());
+                    if (input == inputReaderLists.size()) {
+                        inputReaderLists.add(new ArrayList<>());
+                    }
+                    from[slot] = ~input;
+                    inputReaderLists.get(input).add(i);
+                }
+            }
+            this.sources[i] = from;
+            if (action instanceof Assignment assignment) {
+                this.lastWrite.put(assignment.getIdent(), i);
+            }
+        }
+        this.readers = toArrays(statementReaders);
+        this.inputReaders = toArrays(inputReaderLists);
+        this.printStatements = new int[prints];
+        for (int i = 0; i < size; i++) {
+            if (this.printNumber[i] >= 0) {
+                this.printStatements[this.printNumber[i]] = i;
+            }
+        }
+        this.inputValues = new int[this.inputs.size()];
+        this.inputSet = new boolean[this.inputs.size()];
+
+        for (int i = 0; i < size; i++) {
+            run(i);
+        }
+    }
+
+    private static int[][] toArrays(List<List<Integer>> lists) {
+        int[][] arrays = new int[lists.size()][];
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = lists.get(i).stream().mapToInt(n -> n).toArray();
+        }
+        return arrays;
+    }
+
+    /**
+     * @return the variables the program reads before assigning them,
+     *         in the order they are first read
+     */
+    public Set<String> inputs() {
+        return Collections.unmodifiableSet(this.inputs.keySet());
+    }
+
+    /**
+     * Change some inputs and bring the program up to date.
+     * @param changes the new value of each input that changes
+     * @return the outputs whose values changed. A variable or print
+     *         whose statement now fails is left out; see the error.
+     * @throws IllegalArgumentException if a name is not an input
+     */
+    public Changes update(Map<String, Integer> changes) {
+        for (Map.Entry<String, Integer> change : changes.entrySet()) {
+            Integer input = this.inputs.get(change.getKey());
+            if (input == null) {
+                throw new IllegalArgumentException(
+                        change.getKey() + " is not an input");
+            }
+            int value = change.getValue();
+            if (!this.inputSet[input] || this.inputValues[input] != value) {
+                this.inputValues[input] = value;
+                this.inputSet[input] = true;
+                enqueue(this.inputReaders[input]);
+            }
+        }
+
+        Map<String, Integer> variables = new HashMap<>();
+        Map<Integer, Integer> prints = new TreeMap<>();
+        while (!this.queue.isEmpty()) {
+            int i = this.queue.poll();
+            this.queued[i] = false;
+            if (!run(i)) {
+                continue;
+            }
+            enqueue(this.readers[i]);
+            if (this.errors[i] != null) {
+                continue;
+            }
+            ActionNode action = this.actions.get(i);
+            if (action instanceof Assignment assignment) {
+                if (this.lastWrite.get(assignment.getIdent()) == i) {
+                    variables.put(assignment.getIdent(), this.values[i]);
+                }
+            }
+            else {
+                prints.put(this.printNumber[i], this.values[i]);
+            }
+        }
+        return new Changes(variables, prints, error());
+    }
+
+    private void enqueue(int[] statements) {
+        for (int i : statements) {
+            if (!this.queued[i]) {
+                this.queued[i] = true;
+                this.queue.add(i);
+            }
+        }
+    }
+
+    /**
+     * Run one statement again.
+     * @return true if its value or error changed
+     */
+    private boolean run(int i) {
+        int[] from = this.sources[i];
+        Frame frame = this.frames[i];
+        DendronException error = null;
+        for (int slot = 0; slot < from.length; slot++) {
+            if (from[slot] >= 0) {
+                error = this.errors[from[slot]];
+                if (error != null) {
+                    break;
+                }
+                frame.set(slot, this.values[from[slot]]);
+            }
+            else if (this.inputSet[~from[slot]]) {
+                frame.set(slot, this.inputValues[~from[slot]]);
+            }
+            else {
+                // Leave the slot unassigned, so that reading it fails
+                // just where the interpreter's read would.
+                frame.clear(slot);
+            }
+        }
+
+        int value = 0;
+        if (error == null) {
+            try {
+                value = this.exprs[i].evaluate(frame);
+            }
+            catch (DendronException e) {
+                error = e;
+            }
+        }
+
+        boolean changed;
+        if (error == null || this.errors[i] == null) {
+            changed = error != this.errors[i] || value != this.values[i];
+            this.errors[i] = error;
+        }
+        else {
+            // Keep the old error if it is the same, so that the
+            // statements that failed with it are not run again.
+            changed = error.getType() != this.errors[i].getType() ||
+                      !Objects.equals(error.getInfo(),
+                                      this.errors[i].getInfo());
+            if (changed) {
+                this.errors[i] = error;
+            }
+        }
+        this.values[i] = value;
+        if (error == null) {
+            this.failures.remove(i);
+        }
+        else {
+            this.failures.add(i);
+        }
+        return changed;
+    }
+
+    /**
+     * @return the final value of every variable whose last assignment
+     *         does not fail, added in the order the variables were
+     *         first assigned
+     */
+    public Map<String, Integer> variables() {
+        Map<String, Integer> symTab = new HashMap<>();
+        for (Map.Entry<String, Integer> write : this.lastWrite.entrySet()) {
+            if (this.errors[write.getValue()] == null) {
+                symTab.put(write.getKey(), this.values[write.getValue()]);
+            }
+        }
+        return symTab;
+    }
+
+    /**
+     * @param number the position of a print statement among the
+     *               program's prints
+     * @return the value it prints, or nothing if it fails
+     * @throws IndexOutOfBoundsException if there is no such print
+     */
+    public Optional<Integer> print(int number) {
+        int i = this.printStatements[number];
+        return this.errors[i] == null ?
+                Optional.of(this.values[i]) : Optional.empty();
+    }
+
+    /**
+     * @return the error that running the program in order, with
+     *         the current inputs, would report
+     */
+    public Optional<DendronException> error() {
+        return this.failures.isEmpty() ?
+                Optional.empty() : Optional.of(this.errors[this.failures.first()]);
+    }
+}
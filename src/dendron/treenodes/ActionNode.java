@@ -18,4 +18,11 @@ public interface ActionNode extends DendronNode {
      */
     void execute( Map< String, Integer > symTab );
 
+    /**
+     * Perform the action represented by this node, using
+     * variable slots assigned by {@link #resolve(Frame)}.
+     * @param frame the resolved variable values
+     */
+    void execute( Frame frame );
+
 }
@@ -1,6 +1,7 @@
 package dendron.treenodes;
 
 import dendron.Errors;
+import dendron.machine.ProgramBuilder;
 
 import java.io.PrintWriter;
 import java.util.Map;
@@ -14,6 +15,7 @@ import java.util.Map;
 public class Assignment implements ActionNode {
     private String ident;
     private ExpressionNode rhs;
+    private int slot = -1;
 
     /**
      * Creates an Assignment node that represents the assignment of a
@@ -22,19 +24,58 @@ public class Assignment implements ActionNode {
      * @param rhs The expression that is being evaluated
      */
     public Assignment(String ident, ExpressionNode rhs) {
-        if (ident.matches("-?\\d+")) {
+        if (isNumber(ident)) {
             Errors.report(Errors.Type.ILLEGAL_VALUE, ident);
         }
         this.ident = ident;
         this.rhs = rhs;
     }
 
+    /**
+     * @return the name of the variable that is assigned a value
+     */
+    public String getIdent() {
+        return this.ident;
+    }
+
+    /**
+     * @return the expression whose value is assigned
+     */
+    public ExpressionNode getRhs() {
+        return this.rhs;
+    }
+
+    /**
+     * Checks whether a name has the form of an integer literal, i.e. an
+     * optional minus sign followed by digits, without running a regex.
+     * @param ident the name to check
+     * @return true if ident looks like a number
+     */
+    private static boolean isNumber(String ident) {
+        int start = ident.startsWith("-") ? 1 : 0;
+        if (ident.length() == start) {
+            return false;
+        }
+        for (int i = start; i < ident.length(); i++) {
+            char c = ident.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public void execute(Map<String, Integer> symTab) {
         int result = rhs.evaluate(symTab);
         symTab.put(this.ident, result);
     }
 
+    @Override
+    public void execute(Frame frame) {
+        frame.set(this.slot, rhs.evaluate(frame));
+    }
+
     @Override
     public void infixDisplay() {
         System.out.print(ident + " := ");
@@ -46,4 +87,16 @@ public class Assignment implements ActionNode {
         rhs.compile(out);
         out.println("STORE " + this.ident);
     }
+
+    @Override
+    public void compile(ProgramBuilder code) {
+        rhs.compile(code);
+        code.store(this.ident);
+    }
+
+    @Override
+    public void resolve(Frame frame) {
+        rhs.resolve(frame);
+        this.slot = frame.resolve(this.ident);
+    }
 }
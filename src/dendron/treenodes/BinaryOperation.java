@@ -1,6 +1,7 @@
 package dendron.treenodes;
 
 import dendron.Errors;
+import dendron.machine.ProgramBuilder;
 
 import java.io.PrintWriter;
 import java.util.Collection;
@@ -36,6 +37,27 @@ public class BinaryOperation implements ExpressionNode {
         this.right = rightChild;
     }
 
+    /**
+     * @return the string of the operator
+     */
+    public String getOperator() {
+        return this.operator;
+    }
+
+    /**
+     * @return the left operand
+     */
+    public ExpressionNode getLeft() {
+        return this.left;
+    }
+
+    /**
+     * @return the right operand
+     */
+    public ExpressionNode getRight() {
+        return this.right;
+    }
+
     @Override
     public void infixDisplay() {
         System.out.print("( ");
@@ -63,6 +85,24 @@ public class BinaryOperation implements ExpressionNode {
         }
     }
 
+    @Override
+    public void compile(ProgramBuilder code) {
+        left.compile(code);
+        right.compile(code);
+        if (operator == ADD) {
+            code.add();
+        }
+        else if (operator == SUB) {
+            code.subtract();
+        }
+        else if (operator == MUL) {
+            code.multiply();
+        }
+        else if (operator == DIV) {
+            code.divide();
+        }
+    }
+
     @Override
     public int evaluate(Map<String, Integer> symTab) {
         int result = 0;
@@ -83,4 +123,32 @@ public class BinaryOperation implements ExpressionNode {
         }
         return result;
     }
+
+    @Override
+    public int evaluate(Frame frame) {
+        int result = 0;
+        if (operator == ADD) {
+            result = left.evaluate(frame) + right.evaluate(frame);
+        }
+        else if (operator == SUB) {
+            result = left.evaluate(frame) - right.evaluate(frame);
+        }
+        else if (operator == MUL) {
+            result = left.evaluate(frame) * right.evaluate(frame);
+        }
+        else if (operator == DIV) {
+            int divisor = right.evaluate(frame);
+            if (divisor == 0) {
+                Errors.report(Errors.Type.DIVIDE_BY_ZERO, null);
+            }
+            result = left.evaluate(frame) / divisor;
+        }
+        return result;
+    }
+
+    @Override
+    public void resolve(Frame frame) {
+        left.resolve(frame);
+        right.resolve(frame);
+    }
 }
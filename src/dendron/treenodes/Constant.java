@@ -1,5 +1,7 @@
 package dendron.treenodes;
 
+import dendron.machine.ProgramBuilder;
+
 import java.io.PrintWriter;
 import java.util.Map;
 
@@ -19,6 +21,13 @@ public class Constant implements ExpressionNode {
         this.value = value;
     }
 
+    /**
+     * @return the integer this node contains
+     */
+    public int getValue() {
+        return this.value;
+    }
+
     @Override
     public void infixDisplay() {
         System.out.print(value);
@@ -29,8 +38,22 @@ public class Constant implements ExpressionNode {
         out.println("PUSH " + this.value);
     }
 
+    @Override
+    public void compile(ProgramBuilder code) {
+        code.push(this.value);
+    }
+
     @Override
     public int evaluate(Map<String, Integer> symTab) {
         return this.value;
     }
+
+    @Override
+    public int evaluate(Frame frame) {
+        return this.value;
+    }
+
+    @Override
+    public void resolve(Frame frame) {
+    }
 }
@@ -1,5 +1,7 @@
 package dendron.treenodes;
 
+import dendron.machine.ProgramBuilder;
+
 import java.io.PrintWriter;
 
 /**
@@ -26,6 +28,23 @@ public interface DendronNode {
      *            usually {@link System#out}
      */
     void compile( PrintWriter out );
+
+    /**
+     * Emit the same Soros instructions as {@link #compile(PrintWriter)},
+     * but as instruction objects, ready to run, instead of as text.
+     *
+     * @param code where the instructions are collected
+     */
+    void compile( ProgramBuilder code );
+
+    /**
+     * Give every variable named in this node and its descendants
+     * a slot in the frame, so that they can later be evaluated against
+     * that frame without looking names up.
+     *
+     * @param frame the frame whose slots are to be used
+     */
+    void resolve( Frame frame );
 }
 
 
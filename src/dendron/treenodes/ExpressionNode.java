@@ -17,4 +17,38 @@ public interface ExpressionNode extends DendronNode {
      * @return the result of the evaluation
      */
     int evaluate( Map< String, Integer > symTab );
+
+    /**
+     * Evaluate the expression represented by this node, using
+     * variable slots assigned by {@link #resolve(Frame)}.
+     *
+     * @param frame the resolved variable values
+     * @return the result of the evaluation
+     */
+    int evaluate( Frame frame );
+
+    /**
+     * Copy an expression, so that resolving the copy into a frame of
+     * its own does not disturb the original tree, which other threads
+     * may be running. Specialized nodes are copied as the plain nodes
+     * they specialize, which give the same results.
+     *
+     * @param expr the expression to copy
+     * @return a new tree of the same shape
+     */
+    static ExpressionNode copy( ExpressionNode expr ) {
+        if ( expr instanceof BinaryOperation binary ) {
+            return new BinaryOperation( binary.getOperator(),
+                                        copy( binary.getLeft() ),
+                                        copy( binary.getRight() ) );
+        }
+        if ( expr instanceof UnaryOperation unary ) {
+            return new UnaryOperation( unary.getOperator(),
+                                       copy( unary.getExpr() ) );
+        }
+        if ( expr instanceof Variable variable ) {
+            return new Variable( variable.getName() );
+        }
+        return new Constant( ( (Constant)expr ).getValue() );
+    }
 }
@@ -0,0 +1,136 @@
+package dendron.treenodes;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * The variable storage for a running Dendron program. Every identifier
+ * in the program is given a dense slot number once, by
+ * {@link DendronNode#resolve(Frame)}, and from then on its value is
+ * read and written by slot, with no hashing or boxing.
+ * A separate bit set records which slots have been assigned.
+ *
+ * @author RIT CS
+ */
+public class Frame {
+    private final IntConsumer printer;
+    private final Map<String, Integer> slots = new HashMap<>();
+    private String[] names = new String[16];
+    private int[] values = new int[16];
+    private final BitSet defined = new BitSet();
+    private int size = 0;
+
+    /**
+     * Create a frame whose program prints to standard output.
+     */
+    public Frame() {
+        this(value -> System.out.println(Print.PRINT_PREFIX + value));
+    }
+
+    /**
+     * Create a frame whose program sends what it prints somewhere else.
+     * @param printer receives the value of each print statement
+     */
+    public Frame(IntConsumer printer) {
+        this.printer = printer;
+    }
+
+    /**
+     * Output a value for a print statement.
+     * @param value the value printed
+     */
+    public void print(int value) {
+        this.printer.accept(value);
+    }
+
+    /**
+     * Finds the slot for a variable, giving it the next free slot if
+     * this is the first time the name has been seen.
+     * @param name the variable's name
+     * @return the variable's slot number
+     */
+    public int resolve(String name) {
+        Integer slot = this.slots.get(name);
+        if (slot == null) {
+            if (this.size == this.values.length) {
+                int capacity = this.size * 2;
+                String[] biggerNames = new String[capacity];
+                int[] biggerValues = new int[capacity];
+                System.arraycopy(this.names, 0, biggerNames, 0, this.size);
+                System.arraycopy(this.values, 0, biggerValues, 0, this.size);
+                this.names = biggerNames;
+                this.values = biggerValues;
+            }
+            slot = this.size++;
+            this.slots.put(name, slot);
+            this.names[slot] = name;
+        }
+        return slot;
+    }
+
+    /**
+     * @return how many variables have been given slots
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param slot a slot number handed out by {@link #resolve(String)}
+     * @return the name of the variable in that slot
+     */
+    public String nameOf(int slot) {
+        return this.names[slot];
+    }
+
+    /**
+     * @param slot a slot number handed out by {@link #resolve(String)}
+     * @return true if the variable in that slot has been assigned
+     */
+    public boolean isDefined(int slot) {
+        return this.defined.get(slot);
+    }
+
+    /**
+     * @param slot a slot number handed out by {@link #resolve(String)}
+     * @return the value in that slot (0 if it was never assigned)
+     */
+    public int get(int slot) {
+        return this.values[slot];
+    }
+
+    /**
+     * Assigns a value to a variable.
+     * @param slot a slot number handed out by {@link #resolve(String)}
+     * @param value the variable's new value
+     */
+    public void set(int slot, int value) {
+        this.values[slot] = value;
+        this.defined.set(slot);
+    }
+
+    /**
+     * Makes a variable unassigned again, so that reading it fails.
+     * @param slot a slot number handed out by {@link #resolve(String)}
+     */
+    public void clear(int slot) {
+        this.defined.clear(slot);
+    }
+
+    /**
+     * Copies the assigned variables into a symbol table. Variables are
+     * added in slot order, which for a program that ran without errors
+     * is the order in which they were first assigned.
+     * @return a table from variable name to value
+     */
+    public Map<String, Integer> toMap() {
+        Map<String, Integer> symTab = new HashMap<>();
+        for (int slot = this.defined.nextSetBit(0); slot >= 0;
+             slot = this.defined.nextSetBit(slot + 1)) {
+            symTab.put(this.names[slot], this.values[slot]);
+        }
+        return symTab;
+    }
+}
@@ -1,5 +1,7 @@
 package dendron.treenodes;
 
+import dendron.machine.ProgramBuilder;
+
 import java.io.PrintWriter;
 import java.util.Map;
 
@@ -10,7 +12,7 @@ import java.util.Map;
  * @author Ryan Nowak
  */
 public class Print implements ActionNode {
-    static String PRINT_PREFIX = "=== ";
+    public static final String PRINT_PREFIX = "=== ";
     private ExpressionNode printee;
 
     /**
@@ -21,12 +23,24 @@ public class Print implements ActionNode {
         this.printee = printee;
     }
 
+    /**
+     * @return the expression that is evaluated and printed
+     */
+    public ExpressionNode getPrintee() {
+        return this.printee;
+    }
+
     @Override
     public void execute(Map<String, Integer> symTab) {
         int result = printee.evaluate(symTab);
         System.out.println(PRINT_PREFIX + result);
     }
 
+    @Override
+    public void execute(Frame frame) {
+        frame.print(printee.evaluate(frame));
+    }
+
     @Override
     public void infixDisplay() {
         System.out.print("Print ");
@@ -38,4 +52,15 @@ public class Print implements ActionNode {
         printee.compile(out);
         out.println("PRINT");
     }
+
+    @Override
+    public void compile(ProgramBuilder code) {
+        printee.compile(code);
+        code.print();
+    }
+
+    @Override
+    public void resolve(Frame frame) {
+        printee.resolve(frame);
+    }
 }
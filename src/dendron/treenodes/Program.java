@@ -1,7 +1,10 @@
 package dendron.treenodes;
 
+import dendron.machine.ProgramBuilder;
+
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -31,6 +34,14 @@ public class Program {
         this.actions.add( newNode );
     }
 
+    /**
+     * Get the children of this Program node.
+     * @return an unmodifiable view of the actions, first-added first
+     */
+    public List< ActionNode > getActions() {
+        return Collections.unmodifiableList( this.actions );
+    }
+
     /**
      * Execute each ActionNode in this object, from
      * first-added to last-added.
@@ -42,6 +53,29 @@ public class Program {
         }
     }
 
+    /**
+     * Execute each ActionNode in this object, from
+     * first-added to last-added, against a frame
+     * prepared by {@link #resolve(Frame)}.
+     * @param frame the resolved variable values
+     */
+    public void execute( Frame frame ) {
+        for ( ActionNode an: this.actions ) {
+            an.execute( frame );
+        }
+    }
+
+    /**
+     * Give every variable in the program a slot in the frame.
+     * This must be done before {@link #execute(Frame)} is called.
+     * @param frame the frame whose slots are to be used
+     */
+    public void resolve( Frame frame ) {
+        for ( ActionNode an: this.actions ) {
+            an.resolve( frame );
+        }
+    }
+
     /**
      * Show the infix displays of all children on standard output.
      * The order is first-added to last-added.
@@ -62,4 +96,13 @@ public class Program {
         for ( ActionNode node: this.actions ) node.compile( out );
     }
 
+    /**
+     * Emit the Soros instructions for the entire program
+     * as instruction objects.
+     * @param code where the instructions are collected
+     */
+    public void compile( ProgramBuilder code ) {
+        for ( ActionNode node: this.actions ) node.compile( code );
+    }
+
 }
@@ -1,5 +1,7 @@
 package dendron.treenodes;
 
+import dendron.machine.ProgramBuilder;
+
 import java.io.PrintWriter;
 import java.util.Collection;
 import java.util.Map;
@@ -29,6 +31,20 @@ public class UnaryOperation implements ExpressionNode {
         this.expr = expr;
     }
 
+    /**
+     * @return the string that represents the operation
+     */
+    public String getOperator() {
+        return this.operator;
+    }
+
+    /**
+     * @return the operand
+     */
+    public ExpressionNode getExpr() {
+        return this.expr;
+    }
+
     @Override
     public void infixDisplay() {
         System.out.print(operator);
@@ -46,6 +62,17 @@ public class UnaryOperation implements ExpressionNode {
         }
     }
 
+    @Override
+    public void compile(ProgramBuilder code) {
+        expr.compile(code);
+        if (operator == NEG) {
+            code.negate();
+        }
+        else if (operator == SQRT) {
+            code.squareRoot();
+        }
+    }
+
     @Override
     public int evaluate(Map<String, Integer> symTab) {
         int result = 0;
@@ -57,4 +84,21 @@ public class UnaryOperation implements ExpressionNode {
         }
         return result;
     }
+
+    @Override
+    public int evaluate(Frame frame) {
+        int result = 0;
+        if (operator == NEG) {
+            result = -expr.evaluate(frame);
+        }
+        else if (operator == SQRT) {
+            result = (int) Math.sqrt(expr.evaluate(frame));
+        }
+        return result;
+    }
+
+    @Override
+    public void resolve(Frame frame) {
+        expr.resolve(frame);
+    }
 }
@@ -1,6 +1,7 @@
 package dendron.treenodes;
 
 import dendron.Errors;
+import dendron.machine.ProgramBuilder;
 
 import java.io.PrintWriter;
 import java.util.Map;
@@ -12,6 +13,7 @@ import java.util.Map;
  */
 public class Variable implements ExpressionNode {
     private String name;
+    private int slot = -1;
 
     /**
      * Creates a Variable node with the given name
@@ -21,6 +23,13 @@ public class Variable implements ExpressionNode {
         this.name = name;
     }
 
+    /**
+     * @return the name of the variable
+     */
+    public String getName() {
+        return this.name;
+    }
+
     @Override
     public void infixDisplay() {
         System.out.print(this.name);
@@ -31,6 +40,11 @@ public class Variable implements ExpressionNode {
         out.println("LOAD " + name);
     }
 
+    @Override
+    public void compile(ProgramBuilder code) {
+        code.load(name);
+    }
+
     @Override
     public int evaluate(Map<String, Integer> symTab) {
         if (symTab.get(this.name) == null) {
@@ -38,4 +52,17 @@ public class Variable implements ExpressionNode {
         }
         return symTab.get(this.name);
     }
+
+    @Override
+    public int evaluate(Frame frame) {
+        if (!frame.isDefined(this.slot)) {
+            Errors.report(Errors.Type.UNINITIALIZED, this.name);
+        }
+        return frame.get(this.slot);
+    }
+
+    @Override
+    public void resolve(Frame frame) {
+        this.slot = frame.resolve(this.name);
+    }
 }